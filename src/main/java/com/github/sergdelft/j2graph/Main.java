@@ -2,10 +2,13 @@ package com.github.sergdelft.j2graph;
 
 import com.github.sergdelft.j2graph.iclr20great.ICLR20GreatDataGenerator;
 
+import java.util.Arrays;
+
 public class Main {
 
+    // --resume: go on from the last checkpoint of an earlier run
     public static void main(String[] args) {
         ICLR20GreatDataGenerator ICLR20GreatDataGenerator = new ICLR20GreatDataGenerator();
-        ICLR20GreatDataGenerator.run();
+        ICLR20GreatDataGenerator.run(Arrays.asList(args).contains("--resume"));
     }
 }
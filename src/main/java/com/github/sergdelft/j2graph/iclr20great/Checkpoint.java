@@ -0,0 +1,197 @@
+package com.github.sergdelft.j2graph.iclr20great;
+
+import com.github.sergdelft.j2graph.walker.FileRandom;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Where a generation run is, so that it can go on from there after it stopped (e.g., crashed).
+ * <p>
+ * A checkpoint lists the state of every split (its shards and the vocabulary counted so far, saved
+ * to a file of its own), and the settings the samples depend on (e.g., the seeds of the random
+ * numbers, which are drawn per file, see {@link FileRandom}). The files committed
+ * so far are appended to a log (generator.done.txt), one path per line. The checkpoint itself
+ * (generator.checkpoint.json) is written to a temporary file and then moved over the previous one,
+ * so that a crash leaves either checkpoint whole; it records how long the log was, and a resumed run
+ * drops what was logged after it.
+ */
+class Checkpoint {
+
+    static final String CHECKPOINT_FILE = "generator.checkpoint.json";
+    static final String DONE_FILE = "generator.done.txt";
+
+    // vocabularies saved by checkpoints (e.g., train.vocabulary-00003.bin, and its .sketch)
+    private static final Pattern VOCABULARY_FILES = Pattern.compile("\\w+\\.vocabulary-\\d{5,}\\.bin(\\.sketch)?");
+
+    private final Path directory;
+    private final JsonObject settings;
+    private final Map<String, JsonObject> splits = new LinkedHashMap<>();
+    // hashes of the paths committed before the run resumed, sorted
+    private final long[] done;
+    private final List<Path> committed = new ArrayList<>();
+    private long doneBytes;
+    private int number;
+
+    private Checkpoint(Path directory, JsonObject settings, long[] done) {
+        this.directory = directory;
+        this.settings = settings;
+        this.done = done;
+    }
+
+    // a new run, dropping the checkpoint of an earlier one
+    static Checkpoint start(Path directory, JsonObject settings) throws IOException {
+        Files.deleteIfExists(directory.resolve(CHECKPOINT_FILE));
+        Files.deleteIfExists(directory.resolve(DONE_FILE));
+
+        Checkpoint checkpoint = new Checkpoint(directory, settings, new long[0]);
+        checkpoint.deleteUnusedVocabularies();
+        return checkpoint;
+    }
+
+    /**
+     * Goes on from the last checkpoint written in the directory. The settings must be the
+     * ones of the run that wrote it, or the samples that follow would not match.
+     */
+    static Checkpoint resume(Path directory, JsonObject settings) throws IOException {
+        Path file = directory.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(file))
+            throw new IOException("there is no checkpoint to resume from: " + file.toAbsolutePath());
+
+        JsonObject saved = JsonParser.parseString(new String(Files.readAllBytes(file), StandardCharsets.UTF_8)).getAsJsonObject();
+        if (!saved.get("settings").equals(settings))
+            throw new IllegalArgumentException("the run has other settings than the checkpoint: " + settings + " instead of " + saved.get("settings"));
+
+        // files logged after the checkpoint was written are done again
+        long doneBytes = saved.get("done_bytes").getAsLong();
+        Path doneFile = directory.resolve(DONE_FILE);
+        try (FileChannel log = FileChannel.open(doneFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            if (log.size() < doneBytes)
+                throw new IOException("the log of done files is shorter than its checkpoint: " + doneFile);
+            log.truncate(doneBytes);
+        }
+
+        List<Long> hashes = new ArrayList<>();
+        try (BufferedReader log = Files.newBufferedReader(doneFile, StandardCharsets.UTF_8)) {
+            for (String line = log.readLine(); line != null; line = log.readLine())
+                hashes.add(hash(directory.getFileSystem().getPath(line)));
+        }
+        long[] done = hashes.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(done);
+
+        Checkpoint checkpoint = new Checkpoint(directory, settings, done);
+        checkpoint.doneBytes = doneBytes;
+        checkpoint.number = saved.get("number").getAsInt();
+        for (Map.Entry<String, JsonElement> split : saved.getAsJsonObject("splits").entrySet())
+            checkpoint.splits.put(split.getKey(), split.getValue().getAsJsonObject());
+        checkpoint.deleteUnusedVocabularies();
+        return checkpoint;
+    }
+
+    // whether the file was committed before the run resumed
+    boolean isDone(Path file) {
+        return Arrays.binarySearch(done, hash(file)) >= 0;
+    }
+
+    // the file was committed, in file order
+    synchronized void commit(Path file) {
+        committed.add(file);
+    }
+
+    // whether files were committed since the last checkpoint
+    synchronized boolean hasCommits() {
+        return !committed.isEmpty();
+    }
+
+    // the saved state of the split, or null
+    JsonObject split(String split) {
+        return splits.get(split);
+    }
+
+    // where the next checkpoint saves the vocabulary of the split
+    Path vocabularyFile(String split) {
+        return directory.resolve(String.format("%s.vocabulary-%05d.bin", split, number + 1));
+    }
+
+    /**
+     * Writes a checkpoint with the given state of the splits; splits it does not have
+     * (e.g., of an earlier pass) keep their state. Nothing may be committed meanwhile.
+     */
+    synchronized void write(Map<String, JsonObject> states) throws IOException {
+        try (FileChannel log = FileChannel.open(directory.resolve(DONE_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+             Writer out = new OutputStreamWriter(Channels.newOutputStream(log), StandardCharsets.UTF_8)) {
+            for (Path file : committed)
+                out.write(file + "\n");
+            out.flush();
+            log.force(true);
+            doneBytes = log.size();
+        }
+        committed.clear();
+
+        number++;
+        splits.putAll(states);
+
+        JsonObject checkpoint = new JsonObject();
+        checkpoint.addProperty("number", number);
+        checkpoint.addProperty("done_bytes", doneBytes);
+        checkpoint.add("settings", settings);
+        JsonObject splitStates = new JsonObject();
+        splits.forEach(splitStates::add);
+        checkpoint.add("splits", splitStates);
+
+        Path temporary = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        try (FileChannel file = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            file.write(StandardCharsets.UTF_8.encode(new GsonBuilder().setPrettyPrinting().create().toJson(checkpoint)));
+            file.force(true);
+        }
+        Files.move(temporary, directory.resolve(CHECKPOINT_FILE), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        deleteUnusedVocabularies();
+    }
+
+    // vocabularies of earlier checkpoints, or saved after the last one
+    private void deleteUnusedVocabularies() throws IOException {
+        Set<String> used = new HashSet<>();
+        for (JsonObject split : splits.values()) {
+            if (split.has("vocabulary"))
+                used.add(split.get("vocabulary").getAsString());
+        }
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (VOCABULARY_FILES.matcher(name).matches() && !used.contains(name.replaceFirst("\\.sketch$", "")))
+                    Files.delete(file);
+            }
+        }
+    }
+
+    // the hash of the path, as it is drawn from for the file (a mix of the path that is unique in practice)
+    private static long hash(Path file) {
+        return FileRandom.forFile(0, file).nextLong();
+    }
+}
@@ -0,0 +1,51 @@
+package com.github.sergdelft.j2graph.iclr20great;
+
+import com.github.sergdelft.j2graph.iclr20great.ICLR20GreatDataGenerator.Split;
+import com.github.sergdelft.j2graph.walker.FileRandom;
+
+import java.nio.file.Path;
+
+/**
+ * Assigns the files of a corpus to the train, dev and eval splits by a hash of their path
+ * (relative to the corpus), so that a corpus can be split while it is walked once, and
+ * every run splits it the same way.
+ * <p>
+ * By repository, all files under the same directory right under the corpus go to the same
+ * split, so that no repository has code in more than one split.
+ */
+class HashSplitter {
+
+    private final Path corpus;
+    private final double trainRatio;
+    private final double devRatio;
+    private final boolean byRepository;
+    private final long seed;
+
+    /**
+     * @param trainRatio the share of the files (or repositories) that go to train
+     * @param devRatio the share that goes to dev; the rest goes to eval
+     */
+    HashSplitter(Path corpus, double trainRatio, double devRatio, boolean byRepository, long seed) {
+        if (trainRatio < 0 || devRatio < 0 || trainRatio + devRatio > 1)
+            throw new IllegalArgumentException("ratios must be at least 0 and add up to at most 1: " + trainRatio + ", " + devRatio);
+
+        this.corpus = corpus;
+        this.trainRatio = trainRatio;
+        this.devRatio = devRatio;
+        this.byRepository = byRepository;
+        this.seed = seed;
+    }
+
+    Split splitOf(Path file) {
+        Path key = corpus.relativize(file);
+        if (byRepository && key.getNameCount() > 1)
+            key = key.getName(0);
+
+        double draw = FileRandom.forFile(seed, key).nextDouble();
+        if (draw < trainRatio)
+            return Split.TRAIN;
+        if (draw < trainRatio + devRatio)
+            return Split.DEV;
+        return Split.EVAL;
+    }
+}
@@ -3,107 +3,470 @@ package com.github.sergdelft.j2graph.iclr20great;
 import com.github.sergdelft.j2graph.ast.JDT;
 import com.github.sergdelft.j2graph.graph.ClassGraph;
 import com.github.sergdelft.j2graph.graph.MethodGraph;
+import com.github.sergdelft.j2graph.output.AsyncOutputStream;
+import com.github.sergdelft.j2graph.output.ParallelGzipOutputStream;
+import com.github.sergdelft.j2graph.output.ReorderBuffer;
+import com.github.sergdelft.j2graph.output.ShardedOutput;
+import com.github.sergdelft.j2graph.vocabulary.BpeTrainer;
+import com.github.sergdelft.j2graph.vocabulary.HashedLabelIds;
+import com.github.sergdelft.j2graph.vocabulary.ShardedVocabularyCounts;
+import com.github.sergdelft.j2graph.vocabulary.SpillingVocabularyCounts;
+import com.github.sergdelft.j2graph.vocabulary.VocabularyCounter;
+import com.github.sergdelft.j2graph.vocabulary.VocabularyCounts;
+import com.github.sergdelft.j2graph.walker.CorpusGraphWalker;
 import com.github.sergdelft.j2graph.walker.GraphWalker;
-import com.github.sergdelft.j2graph.walker.iclr20great.ICLR20GreatVisitor;
+import com.github.sergdelft.j2graph.walker.NodeKind;
+import com.github.sergdelft.j2graph.walker.iclr20great.BugKind;
+import com.github.sergdelft.j2graph.walker.iclr20great.ICLR20GreatJsonWriter;
 import com.google.gson.JsonObject;
-import org.apache.commons.lang3.tuple.Pair;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
 
 import java.io.BufferedOutputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 
 /**
  * Generator for ICLR20-Great data format: https://github.com/VHellendoorn/ICLR20-Great
  * <p>
- * Also generates token vocabulary for training data (no BPE version).
+ * Also counts the vocabulary of the training data, one vocabulary per kind of node, and trains
+ * a byte-pair encoding on it (see {@link BpeTrainer}).
+ * <p>
+ * Long runs write a checkpoint every CHECKPOINT_EVERY_FILES files (see {@link Checkpoint}),
+ * and {@link #run(boolean)} can resume from the last one, skipping the files it had done. A run
+ * that does not resume first deletes the shards and checkpoints of earlier runs.
  */
 public class ICLR20GreatDataGenerator {
 
     final int BUGGY_METHODS_PER_HUNDRED = 10;
+    // every kind a method has a place for gives a buggy sample (each with the chance above)
+    final Set<BugKind> BUG_KINDS = EnumSet.allOf(BugKind.class);
+    final int FILES_PER_BATCH = 1000;
+
+    // buggy samples and mutated expressions are drawn per file from this seed (and the path of the file
+    // within the corpus, so that the samples do not change when the corpus is moved)
+    final long SEED = 42;
+
+    // split one corpus in a single pass, assigning every file (or every repository, i.e., directory right
+    // under the corpus) to a split by a hash of its path, instead of walking a directory per split
+    final boolean SINGLE_PASS = true;
+    final String CORPUS_PATH = "path/to/folder/containing/java/files";
+    final boolean SPLIT_BY_REPOSITORY = true;
+    final double TRAIN_RATIO = 0.8;
+    final double DEV_RATIO = 0.1;
+    final long SPLIT_SEED = 7;
+
+    // the vocabulary of the training data (train_vocab_token.tsv, ...) keeps the TOP_K most frequent words of every kind
+    final long VOCAB_MIN_COUNT = 2;
+    final int VOCAB_TOP_K = 100_000;
+    // counts the vocabulary on disk, for corpora whose words do not fit in memory: every worker buffers
+    // up to VOCAB_BYTES_PER_WORKER of words, and words rarer than VOCAB_MIN_COUNT are dropped early
+    // by a count-min sketch (of VOCAB_SKETCH_WIDTH counters per row)
+    final boolean VOCAB_SPILL_TO_DISK = false;
+    final long VOCAB_BYTES_PER_WORKER = 64L * 1024 * 1024;
+    final int VOCAB_SKETCH_WIDTH = 1 << 22;
+
+    // the byte-pair encoding of the training data (train_bpe.tsv) is trained on the vocabularies of
+    // these kinds, with up to BPE_MERGES merges of pairs that occur at least BPE_MIN_PAIR_COUNT times
+    final int BPE_MERGES = 16_000;
+    final long BPE_MIN_PAIR_COUNT = 2;
+    final Set<NodeKind> BPE_KINDS = EnumSet.of(NodeKind.TOKEN, NodeKind.VOCABULARY);
+
+    // samples go to rolling shards (train-00000.txt, ...), listed in a manifest per split (train.manifest.json);
+    // the bytes per shard are counted before compression, and the last sample of a shard may go over them
+    final long SAMPLES_PER_SHARD = 100_000;
+    final long BYTES_PER_SHARD = 256L * 1024 * 1024;
+
+    // gzip the output files (as .txt.gz), compressing blocks in parallel
+    final boolean COMPRESS_OUTPUT = false;
+    final int COMPRESSION_BLOCK_SIZE = ParallelGzipOutputStream.DEFAULT_BLOCK_SIZE;
+    final int COMPRESSION_THREADS = Runtime.getRuntime().availableProcessors();
+
+    // write the output on a separate I/O thread, swapping buffers of this size with the generator
+    final boolean ASYNC_OUTPUT = true;
+    final int OUTPUT_BUFFER_SIZE = AsyncOutputStream.DEFAULT_BUFFER_SIZE;
+    final int OUTPUT_PENDING_BUFFERS = AsyncOutputStream.DEFAULT_PENDING_BUFFERS;
+
+    // write the samples with ids into a string table per shard (train-00000.strings.txt), instead of the strings themselves
+    final boolean DICTIONARY_ENCODED = false;
+
+    // write the source tokens as ids hashed into this many buckets (0: as strings), needing no vocabulary;
+    // how the training vocabulary collides goes to train_label_collisions.txt
+    final int HASHED_LABEL_BUCKETS = 0;
+    final long LABEL_HASH_SEED = 0;
+
+    // parse and walk the files on this many workers; the output is committed in file order, whatever the number
+    final int WORKERS = Runtime.getRuntime().availableProcessors();
+    final int MAX_PENDING_FILES = 4 * WORKERS;
+
+    // checkpoint every this many files (0: never), closing the open shards so that the output is whole up to there
+    final long CHECKPOINT_EVERY_FILES = 50_000;
+
+    private final HashedLabelIds labelIds = HASHED_LABEL_BUCKETS > 0 ? new HashedLabelIds(HASHED_LABEL_BUCKETS, LABEL_HASH_SEED) : null;
+    private ExecutorService compressionPool;
+    private ExecutorService workerPool;
+    private Checkpoint checkpoint;
+    private final ThreadLocal<Worker> worker = ThreadLocal.withInitial(Worker::new);
 
     public void run() {
+        run(false);
+    }
+
+    // resuming goes on from the last checkpoint of an earlier run with the same settings
+    public void run(boolean resume) {
+        if (COMPRESS_OUTPUT)
+            compressionPool = Executors.newFixedThreadPool(COMPRESSION_THREADS);
+        workerPool = Executors.newFixedThreadPool(WORKERS);
+
         try {
-            iterateFiles("path/to/folder/containing/java/files/for/train", Split.TRAIN);
-            iterateFiles("path/to/folder/containing/java/files/for/train/validation", Split.DEV);
-            iterateFiles("path/to/folder/containing/java/files/for/test", Split.EVAL);
+            checkpoint = resume ? Checkpoint.resume(Paths.get("."), settings()) : Checkpoint.start(Paths.get("."), settings());
+            if (SINGLE_PASS) {
+                HashSplitter splitter = new HashSplitter(Paths.get(CORPUS_PATH), TRAIN_RATIO, DEV_RATIO, SPLIT_BY_REPOSITORY, SPLIT_SEED);
+                iterateFiles(CORPUS_PATH, EnumSet.allOf(Split.class), splitter::splitOf);
+            } else {
+                iterateFiles("path/to/folder/containing/java/files/for/train", EnumSet.of(Split.TRAIN), file -> Split.TRAIN);
+                iterateFiles("path/to/folder/containing/java/files/for/train/validation", EnumSet.of(Split.DEV), file -> Split.DEV);
+                iterateFiles("path/to/folder/containing/java/files/for/test", EnumSet.of(Split.EVAL), file -> Split.EVAL);
+            }
             System.out.println("Finished");
         } catch (IOException e) {
             e.printStackTrace();
+        } finally {
+            if (compressionPool != null)
+                compressionPool.shutdown();
+            workerPool.shutdown();
         }
     }
 
-    private void iterateFiles(String path, Split split) throws IOException {
-        System.out.println("Starting to preprocess files for " + split.name().toLowerCase());
+    // what the samples depend on besides the corpus; a run only resumes with the settings it started with
+    private JsonObject settings() {
+        JsonObject settings = new JsonObject();
+        settings.addProperty("seed", SEED);
+        settings.addProperty("split_seed", SPLIT_SEED);
+        settings.addProperty("label_hash_seed", LABEL_HASH_SEED);
+        settings.addProperty("hashed_label_buckets", HASHED_LABEL_BUCKETS);
+        settings.addProperty("buggy_methods_per_hundred", BUGGY_METHODS_PER_HUNDRED);
+        settings.addProperty("bug_kinds", BUG_KINDS.toString());
+        settings.addProperty("single_pass", SINGLE_PASS);
+        settings.addProperty("split_by_repository", SPLIT_BY_REPOSITORY);
+        settings.addProperty("train_ratio", TRAIN_RATIO);
+        settings.addProperty("dev_ratio", DEV_RATIO);
+        settings.addProperty("samples_per_shard", SAMPLES_PER_SHARD);
+        settings.addProperty("bytes_per_shard", BYTES_PER_SHARD);
+        settings.addProperty("compress_output", COMPRESS_OUTPUT);
+        settings.addProperty("dictionary_encoded", DICTIONARY_ENCODED);
+        settings.addProperty("vocab_spill_to_disk", VOCAB_SPILL_TO_DISK);
+        settings.addProperty("vocab_sketch_width", VOCAB_SKETCH_WIDTH);
+        settings.addProperty("checkpoint_every_files", CHECKPOINT_EVERY_FILES);
+        return settings;
+    }
 
-        BufferedOutputStream processedDataStream = new BufferedOutputStream(new FileOutputStream(split.name().toLowerCase() + ".txt"));
-        PrintWriter processedDataWriter = new PrintWriter(processedDataStream, true, StandardCharsets.UTF_8);
+    // walks the files once, writing each to the output of its split
+    private void iterateFiles(String path, Set<Split> splits, Function<Path, Split> splitOf) throws IOException {
+        System.out.println("Starting to preprocess files for " + splits.toString().toLowerCase());
 
-        BufferedOutputStream vocabStream = new BufferedOutputStream(new FileOutputStream(split.name().toLowerCase() + "_vocab.txt"));
-        PrintWriter vocabWriter = new PrintWriter(vocabStream, true, StandardCharsets.UTF_8);
+        Map<Split, SplitOutput> outputs = new EnumMap<>(Split.class);
+        for (Split split : splits)
+            outputs.put(split, new SplitOutput(split, checkpoint.split(split.name().toLowerCase())));
 
-        Files.walk(Paths.get(path))
-                .filter(Files::isRegularFile)
-                .forEach(filePath -> processFile(split, processedDataWriter, vocabWriter, filePath));
+        ReorderBuffer<FileResult> results = new ReorderBuffer<>(MAX_PENDING_FILES, result -> {
+            result.output.commit(result);
+            checkpoint.commit(result.file);
+        });
 
-        processedDataWriter.close();
-        processedDataStream.close();
-        vocabWriter.close();
-        vocabStream.close();
-    }
-
-    private void processFile(Split split, PrintWriter processedDataWriter, PrintWriter vocabWriter, Path filePath) {
-        GraphWalker graphWalker = new GraphWalker();
-        try {
-            String sourceCode = loadSourceCode(filePath.toString());
-            ClassGraph graph = new JDT().parse(sourceCode);
-            if (graph != null) {
-                ICLR20GreatVisitor ICLR20GreatVisitor = new ICLR20GreatVisitor();
-                graphWalker.accept(graph, ICLR20GreatVisitor);
-                if (split.equals(Split.TRAIN) && !ICLR20GreatVisitor.getCorrectAndBuggyPairs().isEmpty()) {
-                    saveTokensToFile(vocabWriter, graph);
+        Path corpus = Paths.get(path);
+        try (Stream<Path> files = Files.walk(corpus)) {
+            Iterator<Path> regularFiles = files.filter(Files::isRegularFile).iterator();
+            // skipped files are counted too, so that a resumed run checkpoints where the first one did
+            long filesSeen = 0;
+            while (regularFiles.hasNext()) {
+                Path filePath = regularFiles.next();
+                if (!checkpoint.isDone(filePath)) {
+                    SplitOutput output = outputs.get(splitOf.apply(filePath));
+                    long sequence = results.reserve();
+                    workerPool.execute(() -> results.complete(sequence, worker.get().process(filePath, corpus.relativize(filePath), output)));
                 }
-                for (Pair<JsonObject, JsonObject> pair : ICLR20GreatVisitor.getCorrectAndBuggyPairs()) {
-                    boolean balanced = false;
-                    writeData(processedDataWriter, pair, balanced);
+
+                if (CHECKPOINT_EVERY_FILES > 0 && ++filesSeen % CHECKPOINT_EVERY_FILES == 0) {
+                    results.awaitCompletion();
+                    writeCheckpoint(outputs);
                 }
             }
-        } catch (IllegalArgumentException | IOException e) {
-            System.out.println("Couldn't parse code. Ignoring and continuing...");
+            results.awaitCompletion();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while preprocessing " + path);
         }
 
+        // the last checkpoint of the pass has all its files, so that a resumed run only closes the outputs again
+        writeCheckpoint(outputs);
+        for (SplitOutput output : outputs.values())
+            output.close();
+    }
+
+    // all files handed to the workers must have been committed
+    private void writeCheckpoint(Map<Split, SplitOutput> outputs) throws IOException {
+        if (!checkpoint.hasCommits())
+            return;
 
+        Map<String, JsonObject> states = new HashMap<>();
+        for (SplitOutput output : outputs.values())
+            states.put(output.split.name().toLowerCase(), output.saveState());
+        checkpoint.write(states);
     }
 
-    private void writeData(PrintWriter processedDataWriter, Pair<JsonObject, JsonObject> pair, boolean balanced) {
-        processedDataWriter.println(pair.getLeft());
-        if (balanced || ThreadLocalRandom.current().nextInt(0, 100 + 1) < BUGGY_METHODS_PER_HUNDRED) {
-            processedDataWriter.println(pair.getRight());
-        }
-        processedDataWriter.flush();
+    private OutputStream openOutput(String fileName) throws IOException {
+        return encode(new BufferedOutputStream(new FileOutputStream(COMPRESS_OUTPUT ? fileName + ".gz" : fileName)));
+    }
+
+    private OutputStream encode(OutputStream file) {
+        OutputStream encoded = file;
+        if (COMPRESS_OUTPUT)
+            encoded = new ParallelGzipOutputStream(encoded, compressionPool, COMPRESSION_BLOCK_SIZE, 2 * COMPRESSION_THREADS);
+        if (ASYNC_OUTPUT)
+            encoded = new AsyncOutputStream(encoded, OUTPUT_BUFFER_SIZE, OUTPUT_PENDING_BUFFERS);
+        return encoded;
+    }
+
+    private boolean writeBuggy(SplittableRandom random) {
+        boolean balanced = false;
+        return balanced || random.nextInt(0, 100 + 1) < BUGGY_METHODS_PER_HUNDRED;
     }
 
     protected String loadSourceCode(String fixture) throws IOException {
         return new String (Files.readAllBytes(Paths.get(fixture)));
     }
 
-    private void saveTokensToFile(PrintWriter vocabWriter, ClassGraph graph) {
+    private void countVocabulary(VocabularyCounter counts, ClassGraph graph) {
         for (MethodGraph methodGraph : graph.getMethods()) {
-            vocabWriter.println("");
-            methodGraph.getTokens().forEach(t -> vocabWriter.print(t.getTokenName() + " "));
-            vocabWriter.println("");
-            methodGraph.getSymbols().forEach(s -> vocabWriter.print(s.getSymbol() + " "));
-            vocabWriter.println("");
-            methodGraph.getVocabulary().forEach(v -> vocabWriter.print(v.getWord() + " "));
-            vocabWriter.println("");
-            methodGraph.getNonTerminals().forEach(nt -> vocabWriter.print(nt.getName() + " "));
-            vocabWriter.flush();
+            methodGraph.getTokens().forEach(t -> counts.add(NodeKind.TOKEN, t.getTokenName()));
+            methodGraph.getSymbols().forEach(s -> counts.add(NodeKind.SYMBOL, s.getSymbol()));
+            methodGraph.getVocabulary().forEach(v -> counts.add(NodeKind.VOCABULARY, v.getWord()));
+            methodGraph.getNonTerminals().forEach(nt -> counts.add(NodeKind.NON_TERMINAL, nt.getName()));
+        }
+    }
+
+    // the samples and the vocabulary of one split
+    private class SplitOutput {
+        private final Split split;
+        private final ShardedOutput processedData;
+        // counted by the workers, for the training data only
+        private final VocabularyCounter vocabulary;
+        private final ICLR20GreatJsonWriter dataWriter;
+        private final CorpusGraphWalker corpusWalker;
+        private long filesCommitted;
+
+        // state: as saved by a checkpoint, or null to start the split
+        SplitOutput(Split split, JsonObject state) throws IOException {
+            this.split = split;
+            this.processedData = new ShardedOutput(Paths.get("."), split.name().toLowerCase(),
+                    COMPRESS_OUTPUT ? ".txt.gz" : ".txt", SAMPLES_PER_SHARD, BYTES_PER_SHARD, ICLR20GreatDataGenerator.this::encode);
+
+            if (!split.equals(Split.TRAIN))
+                this.vocabulary = null;
+            else if (VOCAB_SPILL_TO_DISK)
+                this.vocabulary = new SpillingVocabularyCounts(Paths.get("."), VOCAB_BYTES_PER_WORKER, VOCAB_SKETCH_WIDTH, VOCAB_MIN_COUNT);
+            else
+                this.vocabulary = new ShardedVocabularyCounts();
+
+            // samples are written by the workers, except when dictionary-encoded: the string tables
+            // go with the shards, so then the workers only parse and the files are walked in order here
+            this.dataWriter = new ICLR20GreatJsonWriter(processedData, DICTIONARY_ENCODED, SEED, ICLR20GreatDataGenerator.this::writeBuggy);
+            this.dataWriter.setBugKinds(BUG_KINDS);
+            this.dataWriter.setLabelIds(labelIds);
+            this.corpusWalker = new CorpusGraphWalker(dataWriter, FILES_PER_BATCH);
+
+            if (state != null) {
+                processedData.restore(state.getAsJsonArray("shards"));
+                filesCommitted = state.get("files_committed").getAsLong();
+                if (countsVocabulary())
+                    vocabulary.load(Paths.get(".").resolve(state.get("vocabulary").getAsString()));
+            } else {
+                // shards of an earlier run of the split (e.g., interrupted) would otherwise stay next to the new ones
+                processedData.deleteEarlierFiles();
+            }
+        }
+
+        // ends the current batch and shard, and saves the vocabulary so far; the workers must be idle
+        JsonObject saveState() throws IOException {
+            corpusWalker.end();
+
+            JsonObject state = new JsonObject();
+            StringWriter shards = new StringWriter();
+            processedData.writeState(new JsonWriter(shards));
+            state.add("shards", JsonParser.parseString(shards.toString()));
+            state.addProperty("files_committed", filesCommitted);
+
+            if (countsVocabulary()) {
+                Path file = checkpoint.vocabularyFile(split.name().toLowerCase());
+                vocabulary.save(file);
+                state.addProperty("vocabulary", file.getFileName().toString());
+            }
+            return state;
+        }
+
+        // runs in file order, on the worker that completed the next file
+        void commit(FileResult result) {
+            if (result.failure != null)
+                throw new IllegalStateException("processing " + result.file + " failed", result.failure);
+            if (result.graph == null)
+                return;
+
+            try {
+                if (DICTIONARY_ENCODED) {
+                    corpusWalker.accept(result.corpusFile, result.graph);
+                    // the workers did not walk the file, so they could not tell whether it has samples
+                    if (countsVocabulary() && dataWriter.getSamplesInClass() > 0)
+                        countVocabulary(vocabulary, result.graph);
+                } else {
+                    writeSamples(result);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        boolean countsVocabulary() {
+            return vocabulary != null;
+        }
+
+        // one sample (line) per record, flushing once per batch of files like the corpus walker does
+        private void writeSamples(FileResult result) throws IOException {
+            processedData.setSource(result.corpusFile);
+
+            Writer out = processedData.writer();
+            int start = 0;
+            for (int end = result.samples.indexOf('\n'); end >= 0; end = result.samples.indexOf('\n', start)) {
+                out.write(result.samples, start, end + 1 - start);
+                processedData.endRecord();
+                start = end + 1;
+            }
+
+            if (++filesCommitted % FILES_PER_BATCH == 0)
+                out.flush();
+        }
+
+        void close() throws IOException {
+            corpusWalker.end();
+            processedData.close();
+
+            if (countsVocabulary()) {
+                try (VocabularyCounter counts = vocabulary) {
+                    Map<NodeKind, List<Map.Entry<String, Long>>> top = counts.top(VOCAB_MIN_COUNT, VOCAB_TOP_K);
+                    for (NodeKind kind : NodeKind.values()) {
+                        String fileName = split.name().toLowerCase() + "_vocab_" + kind.name().toLowerCase() + ".tsv";
+                        try (OutputStream vocabStream = openOutput(fileName);
+                             Writer vocabWriter = new OutputStreamWriter(vocabStream, StandardCharsets.UTF_8)) {
+                            VocabularyCounts.write(top.get(kind), vocabWriter);
+                        }
+                    }
+
+                    if (BPE_MERGES > 0)
+                        writeBpe(top);
+                    if (labelIds != null)
+                        writeLabelCollisions(top);
+                }
+            }
+        }
+    }
+
+    private void writeBpe(Map<NodeKind, List<Map.Entry<String, Long>>> vocabulary) throws IOException {
+        BpeTrainer trainer = new BpeTrainer();
+        for (NodeKind kind : BPE_KINDS)
+            trainer.addAll(vocabulary.get(kind));
+
+        try (OutputStream bpeStream = openOutput("train_bpe.tsv");
+             Writer bpeWriter = new OutputStreamWriter(bpeStream, StandardCharsets.UTF_8)) {
+            trainer.train(BPE_MERGES, BPE_MIN_PAIR_COUNT).write(bpeWriter);
+        }
+    }
+
+    private void writeLabelCollisions(Map<NodeKind, List<Map.Entry<String, Long>>> vocabulary) throws IOException {
+        List<String> labels = new ArrayList<>();
+        vocabulary.values().forEach(words -> words.forEach(word -> labels.add(word.getKey())));
+
+        try (OutputStream collisionStream = openOutput("train_label_collisions.txt");
+             Writer collisionWriter = new OutputStreamWriter(collisionStream, StandardCharsets.UTF_8)) {
+            collisionWriter.write(labelIds.collisions(labels) + "\n");
+        }
+    }
+
+    // parses and walks files on one worker thread, with its own parser and writer
+    private class Worker {
+        private final StringWriter samples = new StringWriter();
+        private final ICLR20GreatJsonWriter dataWriter = new ICLR20GreatJsonWriter(samples, SEED, ICLR20GreatDataGenerator.this::writeBuggy);
+        private final JDT jdt = new JDT();
+
+        Worker() {
+            dataWriter.setBugKinds(BUG_KINDS);
+            dataWriter.setLabelIds(labelIds);
+        }
+
+        // corpusFile: the path of the file within the corpus
+        FileResult process(Path filePath, Path corpusFile, SplitOutput output) {
+            try {
+                String sourceCode = loadSourceCode(filePath.toString());
+                ClassGraph graph = jdt.parse(sourceCode);
+                if (graph == null || DICTIONARY_ENCODED)
+                    return new FileResult(filePath, corpusFile, output, graph, "", null);
+
+                samples.getBuffer().setLength(0);
+                dataWriter.beginFile(corpusFile);
+                new GraphWalker().accept(graph, dataWriter);
+                if (output.countsVocabulary() && dataWriter.getSamplesInClass() > 0)
+                    countVocabulary(output.vocabulary, graph);
+
+                return new FileResult(filePath, corpusFile, output, graph, samples.toString(), null);
+            } catch (IllegalArgumentException | IOException e) {
+                System.out.println("Couldn't parse code. Ignoring and continuing...");
+                return new FileResult(filePath, corpusFile, output, null, "", null);
+            } catch (Throwable e) {
+                // errors too (e.g., a StackOverflowError on a deep file), so that the file is still completed
+                return new FileResult(filePath, corpusFile, output, null, "", e);
+            }
+        }
+    }
+
+    private static class FileResult {
+        private final Path file;
+        // the path within the corpus, which the random numbers of the file are drawn for
+        private final Path corpusFile;
+        private final SplitOutput output;
+        private final ClassGraph graph;
+        private final String samples;
+        private final Throwable failure;
+
+        FileResult(Path file, Path corpusFile, SplitOutput output, ClassGraph graph, String samples, Throwable failure) {
+            this.file = file;
+            this.corpusFile = corpusFile;
+            this.output = output;
+            this.graph = graph;
+            this.samples = samples;
+            this.failure = failure;
         }
     }
 
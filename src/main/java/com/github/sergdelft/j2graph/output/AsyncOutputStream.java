@@ -0,0 +1,246 @@
+package com.github.sergdelft.j2graph.output;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Output stream that writes to the underlying stream on its own I/O thread.
+ * <p>
+ * Writers fill a large buffer; full buffers are handed to the I/O thread and
+ * swapped for an empty one, so writers only wait for the disk when all
+ * {@code maxPendingBuffers} buffers are waiting to be written. Bytes reach the
+ * underlying stream in the order they were written. {@link #flush()} waits until
+ * everything written so far has been written and flushed, so it is best called
+ * at shard or batch boundaries only.
+ * <p>
+ * Errors of the I/O thread are thrown by the next write, flush or close; close
+ * still closes the underlying stream and stops the I/O thread.
+ * The stream is meant to be written by one thread at a time.
+ */
+public class AsyncOutputStream extends OutputStream {
+
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+    public static final int DEFAULT_PENDING_BUFFERS = 4;
+
+    private final OutputStream out;
+    private final int bufferSize;
+    private final int maxBuffers;
+    private final BlockingQueue<Chunk> pending;
+    private final BlockingQueue<byte[]> free;
+    private final Thread writer;
+
+    private int allocatedBuffers = 0;
+    private byte[] buffer;
+    private int position = 0;
+    private boolean closed = false;
+    private volatile IOException failure;
+
+    public AsyncOutputStream(OutputStream out) {
+        this(out, DEFAULT_BUFFER_SIZE, DEFAULT_PENDING_BUFFERS);
+    }
+
+    public AsyncOutputStream(OutputStream out, int bufferSize, int maxPendingBuffers) {
+        if (bufferSize < 1 || maxPendingBuffers < 1)
+            throw new IllegalArgumentException("buffers must hold at least one byte, and at least one must be pending");
+
+        this.out = out;
+        this.bufferSize = bufferSize;
+        this.maxBuffers = maxPendingBuffers + 1;
+        this.pending = new ArrayBlockingQueue<>(maxPendingBuffers);
+        this.free = new ArrayBlockingQueue<>(maxBuffers);
+        this.buffer = allocate();
+
+        this.writer = new Thread(this::writeChunks, "j2graph-output");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (position == buffer.length)
+            handOff(null);
+        buffer[position++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        ensureOpen();
+        while (length > 0) {
+            if (position == buffer.length)
+                handOff(null);
+
+            int copied = Math.min(length, buffer.length - position);
+            System.arraycopy(bytes, offset, buffer, position, copied);
+            position += copied;
+            offset += copied;
+            length -= copied;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        CountDownLatch written = new CountDownLatch(1);
+        handOff(new Chunk(null, 0, Chunk.FLUSH, written));
+        await(written);
+        throwFailure();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+
+        // the I/O thread writes what is left (unless writing failed) and closes the stream, even after an error
+        CountDownLatch written = new CountDownLatch(1);
+        try {
+            if (position > 0)
+                pending.put(new Chunk(buffer, position, Chunk.WRITE, null));
+            pending.put(new Chunk(null, 0, Chunk.CLOSE, written));
+            written.await();
+        } catch (InterruptedException e) {
+            stop(written);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for the output");
+        }
+        throwFailure();
+    }
+
+    // stops the I/O thread without waiting for what is pending, and closes the stream if it did not
+    private void stop(CountDownLatch written) {
+        writer.interrupt();
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+
+        if (written.getCount() > 0) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                if (failure == null)
+                    failure = e;
+            }
+        }
+    }
+
+    // hands the current buffer (if it has bytes) and then the command (if any) to the I/O thread
+    private void handOff(Chunk command) throws IOException {
+        try {
+            if (position > 0) {
+                pending.put(new Chunk(buffer, position, Chunk.WRITE, null));
+                buffer = nextBuffer();
+                position = 0;
+            }
+            if (command != null)
+                pending.put(command);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for the output");
+        }
+        throwFailure();
+    }
+
+    private byte[] nextBuffer() throws InterruptedException {
+        byte[] next = free.poll();
+        if (next != null)
+            return next;
+        if (allocatedBuffers < maxBuffers)
+            return allocate();
+        return free.take();
+    }
+
+    private byte[] allocate() {
+        allocatedBuffers++;
+        return new byte[bufferSize];
+    }
+
+    private void writeChunks() {
+        while (true) {
+            Chunk chunk;
+            try {
+                chunk = pending.take();
+            } catch (InterruptedException e) {
+                failure = new InterruptedIOException("output thread interrupted");
+                return;
+            }
+
+            try {
+                if (failure == null) {
+                    if (chunk.length > 0)
+                        out.write(chunk.bytes, 0, chunk.length);
+                    if (chunk.command == Chunk.FLUSH)
+                        out.flush();
+                }
+                if (chunk.command == Chunk.CLOSE)
+                    out.close();
+            } catch (IOException e) {
+                if (failure == null)
+                    failure = e;
+            } catch (Throwable e) {
+                // unchecked ones too (e.g., of a compressor), so that the thread goes on draining
+                if (failure == null)
+                    failure = new IOException(e);
+            } finally {
+                if (chunk.bytes != null)
+                    free.offer(chunk.bytes);
+                if (chunk.written != null)
+                    chunk.written.countDown();
+            }
+
+            if (chunk.command == Chunk.CLOSE)
+                return;
+        }
+    }
+
+    private void await(CountDownLatch written) throws IOException {
+        try {
+            written.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for the output");
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed)
+            throw new IOException("stream closed");
+        throwFailure();
+    }
+
+    private void throwFailure() throws IOException {
+        IOException e = failure;
+        if (e != null)
+            throw new IOException("writing the output failed", e);
+    }
+
+    private static final class Chunk {
+        static final int WRITE = 0;
+        static final int FLUSH = 1;
+        static final int CLOSE = 2;
+
+        private final byte[] bytes;
+        private final int length;
+        private final int command;
+        private final CountDownLatch written;
+
+        Chunk(byte[] bytes, int length, int command, CountDownLatch written) {
+            this.bytes = bytes;
+            this.length = length;
+            this.command = command;
+            this.written = written;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.github.sergdelft.j2graph.output;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses the output in independent blocks, on a pool of threads.
+ * <p>
+ * Every block becomes a gzip member of its own, so the result is a regular
+ * (multi-member) gzip file that gzip, zcat or {@link java.util.zip.GZIPInputStream}
+ * can read. Blocks are written in the order they were filled, no matter which one
+ * is compressed first. At most {@code maxPendingBlocks} blocks wait for compression;
+ * after that, writing blocks until the oldest one is done.
+ * <p>
+ * As with {@link GZIPOutputStream} (without sync flush), {@link #flush()} does not cut
+ * the current block short: it only writes the blocks that are already compressed.
+ * Writers that flush often (e.g., an autoflushing PrintWriter) therefore do not
+ * hurt the compression. The last block is written when the stream is closed.
+ * The underlying stream is closed even when a block could not be compressed or written.
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+    private final OutputStream out;
+    private final ExecutorService pool;
+    private final int blockSize;
+    private final int maxPendingBlocks;
+
+    private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+    private byte[] block;
+    private int count = 0;
+    private boolean anyBlock = false;
+
+    public ParallelGzipOutputStream(OutputStream out, ExecutorService pool) {
+        this(out, pool, DEFAULT_BLOCK_SIZE, 2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    public ParallelGzipOutputStream(OutputStream out, ExecutorService pool, int blockSize, int maxPendingBlocks) {
+        if (blockSize < 1 || maxPendingBlocks < 1)
+            throw new IllegalArgumentException("block size and pending blocks must be positive");
+
+        this.out = out;
+        this.pool = pool;
+        this.blockSize = blockSize;
+        this.maxPendingBlocks = maxPendingBlocks;
+        this.block = new byte[blockSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        block[count++] = (byte) b;
+        if (count == blockSize)
+            submitBlock();
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            int chunk = Math.min(length, blockSize - count);
+            System.arraycopy(bytes, offset, block, count, chunk);
+            count += chunk;
+            offset += chunk;
+            length -= chunk;
+
+            if (count == blockSize)
+                submitBlock();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writeCompressedBlocks();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        // an empty file is not valid gzip, so there is always at least one member
+        try {
+            if (count > 0 || !anyBlock)
+                submitBlock();
+
+            while (!pending.isEmpty())
+                writeOldestBlock();
+        } catch (Throwable e) {
+            // the blocks left are dropped, but the file is closed all the same
+            for (Future<byte[]> block : pending)
+                block.cancel(false);
+            pending.clear();
+            try {
+                out.close();
+            } catch (IOException closing) {
+                e.addSuppressed(closing);
+            }
+            throw e;
+        }
+        out.close();
+    }
+
+    private void submitBlock() throws IOException {
+        byte[] data = block;
+        int length = count;
+        pending.add(pool.submit(() -> compress(data, length)));
+        anyBlock = true;
+
+        block = new byte[blockSize];
+        count = 0;
+
+        while (pending.size() > maxPendingBlocks)
+            writeOldestBlock();
+        writeCompressedBlocks();
+    }
+
+    private void writeCompressedBlocks() throws IOException {
+        while (!pending.isEmpty() && pending.peek().isDone())
+            writeOldestBlock();
+    }
+
+    private void writeOldestBlock() throws IOException {
+        try {
+            out.write(pending.poll().get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while compressing");
+        } catch (ExecutionException e) {
+            throw new IOException("could not compress block", e.getCause());
+        }
+    }
+
+    private static byte[] compress(byte[] data, int length) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed, 1 << 16)) {
+            gzip.write(data, 0, length);
+        }
+        return compressed.toByteArray();
+    }
+}
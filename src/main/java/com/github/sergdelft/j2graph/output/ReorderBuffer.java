@@ -0,0 +1,74 @@
+package com.github.sergdelft.j2graph.output;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Commits results that are computed out of order (e.g., by a pool of workers)
+ * in the order of their sequence numbers.
+ * <p>
+ * The producer reserves a sequence number per task with {@link #reserve()}, which
+ * blocks while {@code capacity} tasks are in flight, so that memory stays bounded.
+ * Workers hand their results in with {@link #complete(long, Object)}; the results
+ * that are next in line are committed right away, one at a time, on the thread that
+ * completed them. {@link #awaitCompletion()} waits until everything reserved was committed.
+ * If a commit throws, nothing is committed after it, and the producer gets the exception.
+ */
+public class ReorderBuffer<T> {
+
+    private final int capacity;
+    private final Consumer<T> commit;
+
+    private final Map<Long, T> completed = new HashMap<>();
+    private long reserved = 0;
+    private long next = 0;
+    private Throwable failure;
+
+    public ReorderBuffer(int capacity, Consumer<T> commit) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("at least one result must fit in the buffer: " + capacity);
+
+        this.capacity = capacity;
+        this.commit = commit;
+    }
+
+    public synchronized long reserve() throws InterruptedException {
+        while (reserved - next >= capacity && failure == null)
+            wait();
+        throwFailure();
+
+        return reserved++;
+    }
+
+    public synchronized void complete(long sequence, T result) {
+        completed.put(sequence, result);
+
+        while (failure == null && completed.containsKey(next)) {
+            try {
+                commit.accept(completed.remove(next));
+            } catch (Throwable e) {
+                // errors too (e.g., a StackOverflowError), or the producer would wait forever
+                failure = e;
+            }
+            next++;
+        }
+        notifyAll();
+    }
+
+    public synchronized void awaitCompletion() throws InterruptedException {
+        while (next < reserved && failure == null)
+            wait();
+        throwFailure();
+    }
+
+    // number of results committed so far
+    public synchronized long getCommitted() {
+        return next;
+    }
+
+    private void throwFailure() {
+        if (failure != null)
+            throw new IllegalStateException("committing a result failed", failure);
+    }
+}
@@ -0,0 +1,401 @@
+package com.github.sergdelft.j2graph.output;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32C;
+
+/**
+ * Output split over numbered shard files (e.g., train-00000.tfrecord, train-00001.tfrecord, ...).
+ * <p>
+ * Writers write a record to {@link #stream()} (or to {@link #writer()}, for text)
+ * and then call {@link #endRecord()}. A shard is closed as soon as it reaches the
+ * maximum number of records or bytes, and the next record opens a new one. Records
+ * are never split across shards. The byte limit counts the bytes of the records as
+ * they are written, before the encoding (e.g., uncompressed): it does not depend on
+ * how far an asynchronous encoding got, and a shard goes over it by at most its last record.
+ * <p>
+ * When closed, the output writes a manifest (prefix.manifest.json) that lists, for
+ * every shard, its number of samples (records), its size in bytes, the CRC32C of its
+ * bytes, and the source files (see {@link #setSource(Path)}) its records came from.
+ * Companion files of a shard (e.g., a string table, see {@link #companion(String)})
+ * are listed with their shard.
+ * <p>
+ * A long run can save where the output is with {@link #writeState(JsonWriter)}, and a new
+ * output can go on from there with {@link #restore(JsonArray)} (e.g., after a crash).
+ */
+public class ShardedOutput implements Closeable {
+
+    /**
+     * Encodes the bytes of a shard before they go to the file (e.g., compresses them).
+     */
+    @FunctionalInterface
+    public interface Encoding {
+        OutputStream wrap(OutputStream file) throws IOException;
+    }
+
+    private final Path directory;
+    private final String prefix;
+    private final String suffix;
+    private final long maxRecords;
+    private final long maxBytes;
+    private final Encoding encoding;
+
+    private final List<Shard> shards = new ArrayList<>();
+    private Shard current;
+    private OutputStream out;
+    private RecordWriter writer;
+    private String source;
+
+    public ShardedOutput(Path directory, String prefix, String suffix, long maxRecords, long maxBytes) throws IOException {
+        this(directory, prefix, suffix, maxRecords, maxBytes, file -> file);
+    }
+
+    public ShardedOutput(Path directory, String prefix, String suffix, long maxRecords, long maxBytes, Encoding encoding) throws IOException {
+        if (maxRecords < 1 || maxBytes < 1)
+            throw new IllegalArgumentException("shards must hold at least one record and one byte");
+
+        this.directory = Files.createDirectories(directory);
+        this.prefix = prefix;
+        this.suffix = suffix;
+        this.maxRecords = maxRecords;
+        this.maxBytes = maxBytes;
+        this.encoding = encoding;
+    }
+
+    public OutputStream stream() throws IOException {
+        if (current == null)
+            openShard();
+        return out;
+    }
+
+    /**
+     * Text view of the output: characters are encoded as UTF-8 and go to the
+     * shard of the record they belong to.
+     */
+    public Writer writer() {
+        if (writer == null)
+            writer = new RecordWriter();
+        return writer;
+    }
+
+    /**
+     * A file that goes with the current shard, named after it (e.g., train-00000.strings.txt
+     * for the suffix ".strings.txt"). It is opened on first use, and closed with the shard.
+     */
+    public OutputStream companion(String companionSuffix) throws IOException {
+        stream();
+
+        ChecksumStream companion = current.companions.get(companionSuffix);
+        if (companion == null) {
+            companion = new ChecksumStream(shardFile(current.index, companionSuffix));
+            current.companions.put(companionSuffix, companion);
+        }
+        return companion;
+    }
+
+    // the source file of the records that follow, until the next call
+    public void setSource(Path file) {
+        this.source = file == null ? null : file.toString();
+    }
+
+    public void endRecord() throws IOException {
+        if (writer != null)
+            writer.drain();
+
+        stream();
+        current.records++;
+        if (source != null)
+            current.sources.add(source);
+
+        if (current.records >= maxRecords || current.recordBytes >= maxBytes)
+            closeShard();
+    }
+
+    // closes the current shard, if any; the next record opens a new one
+    public void endShard() throws IOException {
+        if (writer != null)
+            writer.drain();
+        if (current != null)
+            closeShard();
+    }
+
+    /**
+     * Ends the current shard, and writes the shards so far as they are listed in the manifest.
+     */
+    public void writeState(JsonWriter json) throws IOException {
+        endShard();
+        writeShards(json);
+    }
+
+    /**
+     * Goes on from the shards written by {@link #writeState(JsonWriter)}: they are listed again
+     * in the manifest, the next record opens the shard after them, and the files of later
+     * shards (e.g., written after the state was saved) are deleted.
+     */
+    public void restore(JsonArray state) throws IOException {
+        requireNothingWritten();
+
+        for (JsonElement element : state) {
+            JsonObject saved = element.getAsJsonObject();
+            Shard shard = new Shard(shards.size(), null);
+            shard.summary = restoreFile(saved, shardFile(shard.index));
+            shard.records = saved.get("samples").getAsLong();
+            for (JsonElement source : saved.getAsJsonArray("sources"))
+                shard.sources.add(source.getAsString());
+            for (JsonElement companion : saved.getAsJsonArray("companions")) {
+                String file = companion.getAsJsonObject().get("file").getAsString();
+                String companionSuffix = file.substring(shardFile(shard.index, "").getFileName().toString().length());
+                shard.companionSummaries.put(companionSuffix, restoreFile(companion.getAsJsonObject(), shardFile(shard.index, companionSuffix)));
+            }
+            shards.add(shard);
+        }
+        deleteShardFiles(shards.size());
+    }
+
+    /**
+     * Deletes the shards and the manifest an earlier output with the same prefix left in the
+     * directory (e.g., a run that was interrupted), so that they do not mix with the new ones.
+     */
+    public void deleteEarlierFiles() throws IOException {
+        requireNothingWritten();
+        Files.deleteIfExists(manifestFile());
+        deleteShardFiles(0);
+    }
+
+    private void requireNothingWritten() {
+        if (!shards.isEmpty())
+            throw new IllegalStateException("only an output that wrote nothing yet can be restored or cleared");
+    }
+
+    // the files of the shard and the ones after it, and of their companions
+    private void deleteShardFiles(int first) throws IOException {
+        // the shard files are named prefix-00000 followed by the suffix of the shard or of a companion
+        Pattern shardFiles = Pattern.compile(Pattern.quote(prefix) + "-(\\d{5,}).*");
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Matcher matcher = shardFiles.matcher(file.getFileName().toString());
+                if (matcher.matches() && Long.parseLong(matcher.group(1)) >= first)
+                    Files.delete(file);
+            }
+        }
+    }
+
+    private FileSummary restoreFile(JsonObject saved, Path file) throws IOException {
+        long bytes = saved.get("bytes").getAsLong();
+        if (!Files.isRegularFile(file) || Files.size(file) != bytes)
+            throw new IOException("the output does not match its saved state: " + file + " should have " + bytes + " bytes");
+        return new FileSummary(bytes, Long.parseLong(saved.get("crc32c").getAsString(), 16));
+    }
+
+    // number of shards opened so far
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    public Path shardFile(int shard) {
+        return shardFile(shard, suffix);
+    }
+
+    public Path manifestFile() {
+        return directory.resolve(prefix + ".manifest.json");
+    }
+
+    @Override
+    public void close() throws IOException {
+        endShard();
+        writeManifest();
+    }
+
+    private Path shardFile(int shard, String fileSuffix) {
+        return directory.resolve(String.format("%s-%05d%s", prefix, shard, fileSuffix));
+    }
+
+    private void openShard() throws IOException {
+        current = new Shard(shards.size(), new ChecksumStream(shardFile(shards.size())));
+        shards.add(current);
+        out = new RecordStream(encoding.wrap(current.file), current);
+    }
+
+    private void closeShard() throws IOException {
+        out.close();
+        current.summary = current.file.summary();
+        for (Map.Entry<String, ChecksumStream> companion : current.companions.entrySet()) {
+            companion.getValue().close();
+            current.companionSummaries.put(companion.getKey(), companion.getValue().summary());
+        }
+
+        out = null;
+        current = null;
+    }
+
+    private void writeManifest() throws IOException {
+        try (JsonWriter json = new JsonWriter(Files.newBufferedWriter(manifestFile(), StandardCharsets.UTF_8))) {
+            json.setIndent("  ");
+            json.beginObject();
+            json.name("shards");
+            writeShards(json);
+            json.endObject();
+        }
+    }
+
+    // all shards are closed
+    private void writeShards(JsonWriter json) throws IOException {
+        json.beginArray();
+        for (Shard shard : shards) {
+            json.beginObject();
+            writeFile(json, shardFile(shard.index), shard.summary);
+            json.name("samples").value(shard.records);
+
+            json.name("sources").beginArray();
+            for (String file : shard.sources)
+                json.value(file);
+            json.endArray();
+
+            json.name("companions").beginArray();
+            for (Map.Entry<String, FileSummary> companion : shard.companionSummaries.entrySet()) {
+                json.beginObject();
+                writeFile(json, shardFile(shard.index, companion.getKey()), companion.getValue());
+                json.endObject();
+            }
+            json.endArray();
+            json.endObject();
+        }
+        json.endArray();
+    }
+
+    private void writeFile(JsonWriter json, Path file, FileSummary summary) throws IOException {
+        json.name("file").value(file.getFileName().toString());
+        json.name("bytes").value(summary.bytes);
+        json.name("crc32c").value(String.format("%08x", summary.crc));
+    }
+
+    private static class Shard {
+        private final int index;
+        // the open files of the shard, and their summaries once it is closed
+        private final ChecksumStream file;
+        private final Map<String, ChecksumStream> companions = new LinkedHashMap<>();
+        private FileSummary summary;
+        private final Map<String, FileSummary> companionSummaries = new LinkedHashMap<>();
+        private final Set<String> sources = new LinkedHashSet<>();
+        private long records;
+        // bytes written to the shard, before the encoding
+        private long recordBytes;
+
+        Shard(int index, ChecksumStream file) {
+            this.index = index;
+            this.file = file;
+        }
+    }
+
+    private static class FileSummary {
+        private final long bytes;
+        private final long crc;
+
+        FileSummary(long bytes, long crc) {
+            this.bytes = bytes;
+            this.crc = crc;
+        }
+    }
+
+    // counts the bytes written to the shard, before they are encoded
+    private static class RecordStream extends FilterOutputStream {
+        private final Shard shard;
+
+        RecordStream(OutputStream encoded, Shard shard) {
+            super(encoded);
+            this.shard = shard;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            shard.recordBytes++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+            shard.recordBytes += length;
+        }
+    }
+
+    // counts and checksums the bytes that reach the file
+    private static class ChecksumStream extends FilterOutputStream {
+        private final CRC32C crc = new CRC32C();
+        // volatile, as an encoding may write from another thread (see AsyncOutputStream)
+        private volatile long count = 0;
+
+        ChecksumStream(Path file) throws IOException {
+            super(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+        }
+
+        FileSummary summary() {
+            return new FileSummary(count, crc.getValue());
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            crc.update(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+            crc.update(bytes, offset, length);
+            count += length;
+        }
+    }
+
+    // keeps the characters of the current record, and encodes them as a whole
+    private class RecordWriter extends Writer {
+        private final StringBuilder record = new StringBuilder();
+
+        @Override
+        public void write(char[] chars, int offset, int length) {
+            record.append(chars, offset, length);
+        }
+
+        @Override
+        public void write(String text, int offset, int length) {
+            record.append(text, offset, offset + length);
+        }
+
+        @Override
+        public void write(int c) {
+            record.append((char) c);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            drain();
+            if (out != null)
+                out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            drain();
+        }
+
+        private void drain() throws IOException {
+            if (record.length() == 0)
+                return;
+
+            stream().write(record.toString().getBytes(StandardCharsets.UTF_8));
+            record.setLength(0);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.github.sergdelft.j2graph.vocabulary;
+
+import org.apache.commons.lang3.mutable.MutableLong;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static com.github.sergdelft.j2graph.vocabulary.BytePairEncoding.pair;
+
+/**
+ * Trains a {@link BytePairEncoding} on how often words occur (e.g., the vocabulary of the training data).
+ * <p>
+ * Every merge takes the most frequent pair of adjacent subwords (of the lowest ids, among pairs of
+ * the same frequency). Pair counts are kept up to date incrementally: a merge only recounts the
+ * words that contain the pair, and pushes the new counts of the pairs it changed on a priority
+ * queue. Outdated counts stay in the queue until they come on top, and are then dropped.
+ */
+public class BpeTrainer {
+
+    private static final Comparator<PairCount> MOST_FREQUENT =
+            Comparator.<PairCount>comparingLong(p -> p.count).reversed().thenComparingLong(p -> p.pair);
+
+    private final Map<String, MutableLong> words = new HashMap<>();
+
+    public void add(String word, long count) {
+        if (!word.isEmpty() && count > 0)
+            words.computeIfAbsent(word, w -> new MutableLong()).add(count);
+    }
+
+    public void addAll(List<Map.Entry<String, Long>> words) {
+        for (Map.Entry<String, Long> word : words)
+            add(word.getKey(), word.getValue());
+    }
+
+    /**
+     * Merges pairs until there were {@code merges} merges, or no pair occurs {@code minPairCount} times.
+     */
+    public BytePairEncoding train(int merges, long minPairCount) {
+        if (merges < 0)
+            throw new IllegalArgumentException("merges must be at least 0: " + merges);
+
+        // words and characters in order, so that the ids do not depend on hashing
+        List<String> sorted = new ArrayList<>(words.keySet());
+        Collections.sort(sorted);
+        TreeSet<Integer> codePoints = new TreeSet<>();
+        for (String word : sorted)
+            word.codePoints().forEach(codePoints::add);
+
+        BytePairEncoding encoding = new BytePairEncoding();
+        Map<Integer, Integer> characters = new HashMap<>();
+        for (int codePoint : codePoints)
+            characters.put(codePoint, encoding.addCharacter(codePoint));
+
+        Pairs pairs = new Pairs(sorted.size());
+        for (int word = 0; word < sorted.size(); word++) {
+            pairs.symbols[word] = sorted.get(word).codePoints().map(characters::get).toArray();
+            pairs.lengths[word] = pairs.symbols[word].length;
+            pairs.counts[word] = words.get(sorted.get(word)).longValue();
+            pairs.add(word);
+        }
+
+        long threshold = Math.max(minPairCount, 1);
+        PriorityQueue<PairCount> queue = new PriorityQueue<>(MOST_FREQUENT);
+        pairs.pairCounts.forEach((pair, count) -> {
+            if (count.longValue() >= threshold)
+                queue.add(new PairCount(pair, count.longValue()));
+        });
+
+        int merged = 0;
+        while (merged < merges && !queue.isEmpty()) {
+            PairCount top = queue.poll();
+            MutableLong count = pairs.pairCounts.get(top.pair);
+            if (count == null || count.longValue() != top.count)
+                continue;
+
+            int left = (int) (top.pair >>> 32);
+            int right = (int) top.pair;
+            int subword = encoding.addMerge(left, right);
+            merged++;
+
+            pairs.changed.clear();
+            for (int word : pairs.pairWords.remove(top.pair))
+                pairs.merge(word, left, right, subword);
+
+            for (long pair : pairs.changed) {
+                MutableLong changed = pairs.pairCounts.get(pair);
+                if (changed != null && changed.longValue() >= threshold)
+                    queue.add(new PairCount(pair, changed.longValue()));
+            }
+        }
+        return encoding;
+    }
+
+    // the words as subwords, and how often every pair of adjacent subwords occurs
+    private static class Pairs {
+        private final int[][] symbols;
+        private final int[] lengths;
+        private final long[] counts;
+
+        private final Map<Long, MutableLong> pairCounts = new HashMap<>();
+        // the words a pair occurs in, and maybe some it no longer does
+        private final Map<Long, Set<Integer>> pairWords = new HashMap<>();
+        private final Set<Long> changed = new HashSet<>();
+
+        Pairs(int words) {
+            symbols = new int[words][];
+            lengths = new int[words];
+            counts = new long[words];
+        }
+
+        void merge(int word, int left, int right, int subword) {
+            if (!contains(word, left, right))
+                return;
+
+            int[] s = symbols[word];
+            remove(word);
+            int length = 0;
+            for (int i = 0; i < lengths[word]; i++) {
+                if (i + 1 < lengths[word] && s[i] == left && s[i + 1] == right) {
+                    s[length++] = subword;
+                    i++;
+                } else {
+                    s[length++] = s[i];
+                }
+            }
+            lengths[word] = length;
+            add(word);
+        }
+
+        private boolean contains(int word, int left, int right) {
+            for (int i = 0; i + 1 < lengths[word]; i++) {
+                if (symbols[word][i] == left && symbols[word][i + 1] == right)
+                    return true;
+            }
+            return false;
+        }
+
+        void add(int word) {
+            for (int i = 0; i + 1 < lengths[word]; i++) {
+                long pair = pair(symbols[word][i], symbols[word][i + 1]);
+                pairCounts.computeIfAbsent(pair, p -> new MutableLong()).add(counts[word]);
+                pairWords.computeIfAbsent(pair, p -> new HashSet<>()).add(word);
+                changed.add(pair);
+            }
+        }
+
+        private void remove(int word) {
+            for (int i = 0; i + 1 < lengths[word]; i++) {
+                long pair = pair(symbols[word][i], symbols[word][i + 1]);
+                MutableLong count = pairCounts.get(pair);
+                count.subtract(counts[word]);
+                if (count.longValue() == 0) {
+                    pairCounts.remove(pair);
+                    pairWords.remove(pair);
+                }
+                changed.add(pair);
+            }
+        }
+    }
+
+    private static class PairCount {
+        private final long pair;
+        private final long count;
+
+        PairCount(long pair, long count) {
+            this.pair = pair;
+            this.count = count;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.github.sergdelft.j2graph.vocabulary;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * Splits words into subwords by byte-pair encoding, as trained by {@link BpeTrainer}.
+ * <p>
+ * Subword 0 stands for characters that were not seen in training. The next subwords are
+ * the characters (code points) that were, and then one subword per merge, in the order
+ * of the merges. A word starts as its characters, and the adjacent pair whose merge
+ * came first is merged until no pair can be. Thread-safe.
+ */
+public class BytePairEncoding {
+
+    public static final int UNKNOWN = 0;
+    public static final String UNKNOWN_SUBWORD = "<unk>";
+
+    private final List<String> subwords = new ArrayList<>();
+    // the subword of every character, and the subword every pair (see pair()) merges into
+    private final Map<Integer, Integer> characters = new HashMap<>();
+    private final Map<Long, Integer> merges = new HashMap<>();
+    private final List<int[]> parts = new ArrayList<>();
+
+    BytePairEncoding() {
+        addSubword(UNKNOWN_SUBWORD, null);
+    }
+
+    int addCharacter(int codePoint) {
+        int id = addSubword(new String(Character.toChars(codePoint)), null);
+        characters.put(codePoint, id);
+        return id;
+    }
+
+    int addMerge(int left, int right) {
+        int id = addSubword(subwords.get(left) + subwords.get(right), new int[] {left, right});
+        merges.put(pair(left, right), id);
+        return id;
+    }
+
+    private int addSubword(String subword, int[] pair) {
+        subwords.add(subword);
+        parts.add(pair);
+        return subwords.size() - 1;
+    }
+
+    // number of subwords, including UNKNOWN
+    public int size() {
+        return subwords.size();
+    }
+
+    public String subword(int id) {
+        return subwords.get(id);
+    }
+
+    /**
+     * Passes the subwords of the word to {@code ids}, in order, and returns how many there are.
+     */
+    public int encode(String word, IntConsumer ids) {
+        int[] symbols = word.codePoints().map(c -> characters.getOrDefault(c, UNKNOWN)).toArray();
+        int length = symbols.length;
+
+        while (length > 1) {
+            // the pair that was merged first; merges get increasing ids
+            int best = -1;
+            int bestMerge = Integer.MAX_VALUE;
+            for (int i = 0; i + 1 < length; i++) {
+                Integer merge = merges.get(pair(symbols[i], symbols[i + 1]));
+                if (merge != null && merge < bestMerge) {
+                    best = i;
+                    bestMerge = merge;
+                }
+            }
+            if (best < 0)
+                break;
+
+            symbols[best] = bestMerge;
+            System.arraycopy(symbols, best + 2, symbols, best + 1, length - best - 2);
+            length--;
+        }
+
+        for (int i = 0; i < length; i++)
+            ids.accept(symbols[i]);
+        return length;
+    }
+
+    public int[] encode(String word) {
+        List<Integer> ids = new ArrayList<>();
+        encode(word, ids::add);
+        return ids.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    public List<String> split(String word) {
+        List<String> split = new ArrayList<>();
+        encode(word, id -> split.add(subwords.get(id)));
+        return split;
+    }
+
+    /**
+     * Writes one line per subword, in the order of their ids: the characters as {@code subword},
+     * and the merges as {@code subword<TAB>left id<TAB>right id}. Subwords are escaped as by
+     * {@link VocabularyCounts#write(List, Writer)}.
+     */
+    public void write(Writer out) throws IOException {
+        for (int id = 0; id < subwords.size(); id++) {
+            out.write(VocabularyCounts.escape(subwords.get(id)));
+            int[] pair = parts.get(id);
+            if (pair != null) {
+                out.write('\t');
+                out.write(Integer.toString(pair[0]));
+                out.write('\t');
+                out.write(Integer.toString(pair[1]));
+            }
+            out.write('\n');
+        }
+        out.flush();
+    }
+
+    // reads what write(Writer) wrote
+    public static BytePairEncoding read(Reader in) throws IOException {
+        BytePairEncoding encoding = new BytePairEncoding();
+        BufferedReader lines = new BufferedReader(in);
+        if (lines.readLine() == null)
+            throw new IOException("no subwords to read");
+
+        for (String line = lines.readLine(); line != null; line = lines.readLine()) {
+            String[] columns = line.split("\t", -1);
+            String subword = VocabularyCounts.unescape(columns[0]);
+            if (columns.length == 3) {
+                encoding.addMerge(parseId(columns[1], encoding), parseId(columns[2], encoding));
+            } else if (columns.length == 1 && subword.codePointCount(0, subword.length()) == 1) {
+                encoding.addCharacter(subword.codePointAt(0));
+            } else {
+                throw new IOException("not a subword: " + line);
+            }
+        }
+        return encoding;
+    }
+
+    private static int parseId(String id, BytePairEncoding encoding) throws IOException {
+        try {
+            int parsed = Integer.parseInt(id);
+            if (parsed > 0 && parsed < encoding.size())
+                return parsed;
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IOException("not the id of an earlier subword: " + id);
+    }
+
+    static long pair(int left, int right) {
+        return ((long) left << 32) | (right & 0xffffffffL);
+    }
+}
@@ -0,0 +1,89 @@
+package com.github.sergdelft.j2graph.vocabulary;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Count-min sketch of how often strings occur, in fixed memory (depth * width counters).
+ * <p>
+ * The estimate of a string is the smallest of its counters, one per row. It is never less
+ * than the true count, and only more when other strings share all of its counters. Estimates
+ * can be read by any thread; additions must be made by one thread at a time.
+ * <p>
+ * Strings of different families (e.g., words of different kinds of node) are counted apart.
+ */
+public class CountMinSketch {
+
+    private final int depth;
+    private final int mask;
+    private final AtomicIntegerArray counters;
+
+    /**
+     * @param width counters per row, rounded up to a power of two
+     */
+    public CountMinSketch(int depth, int width) {
+        if (depth < 1 || width < 1 || width > 1 << 30)
+            throw new IllegalArgumentException("a sketch needs at least one row, and 1 to 2^30 counters per row");
+
+        int rowWidth = Integer.highestOneBit(width);
+        if (rowWidth < width)
+            rowWidth <<= 1;
+
+        this.depth = depth;
+        this.mask = rowWidth - 1;
+        this.counters = new AtomicIntegerArray(Math.multiplyExact(depth, rowWidth));
+    }
+
+    // adds one occurrence, and returns the estimate that includes it
+    public int add(int family, String item) {
+        long hash = StringHash.hash(family, item);
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++)
+            estimate = Math.min(estimate, counters.incrementAndGet(cell(hash, row)));
+        return estimate;
+    }
+
+    public int estimate(int family, String item) {
+        long hash = StringHash.hash(family, item);
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++)
+            estimate = Math.min(estimate, counters.get(cell(hash, row)));
+        return estimate;
+    }
+
+    // writes the counters, e.g., to go on counting after a restart
+    public void save(Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+            out.writeInt(depth);
+            out.writeInt(mask + 1);
+            for (int i = 0; i < counters.length(); i++)
+                out.writeInt(counters.get(i));
+        }
+    }
+
+    // adds the counters saved to the file, which must come from a sketch of the same size
+    public void load(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            int savedDepth = in.readInt();
+            int savedWidth = in.readInt();
+            if (savedDepth != depth || savedWidth != mask + 1)
+                throw new IOException(String.format("the sketch in %s is %d x %d, not %d x %d", file, savedDepth, savedWidth, depth, mask + 1));
+
+            for (int i = 0; i < counters.length(); i++)
+                counters.addAndGet(i, in.readInt());
+        }
+    }
+
+    // the rows take the two halves of one hash, h1 + row * h2 (Kirsch and Mitzenmacher)
+    private int cell(long hash, int row) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        return row * (mask + 1) + ((h1 + row * h2) & mask);
+    }
+}
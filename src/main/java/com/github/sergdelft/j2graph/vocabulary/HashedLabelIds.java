@@ -0,0 +1,109 @@
+package com.github.sergdelft.j2graph.vocabulary;
+
+import org.apache.commons.lang3.mutable.MutableInt;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ToIntFunction;
+
+/**
+ * Maps labels (tokens, symbols, vocabulary words and non-terminals) to ids without a vocabulary,
+ * by hashing them into {@code buckets} ids (the hashing trick). The ids only depend on the seed
+ * and the number of buckets, so that samples can be written as ids in the pass that parses them,
+ * by any number of threads. Different labels can get the same id; see {@link #collisions(Iterable)}.
+ */
+public class HashedLabelIds implements ToIntFunction<String> {
+
+    private final int buckets;
+    private final long seed;
+
+    public HashedLabelIds(int buckets, long seed) {
+        if (buckets < 1)
+            throw new IllegalArgumentException("labels need at least 1 bucket: " + buckets);
+
+        this.buckets = buckets;
+        this.seed = seed;
+    }
+
+    public int getBuckets() {
+        return buckets;
+    }
+
+    // the id of the label, from 0 to buckets - 1
+    @Override
+    public int applyAsInt(String label) {
+        // the high 32 bits of the hash, scaled to the buckets (a multiplication instead of a division)
+        return (int) (((StringHash.hash(seed, label) >>> 32) * buckets) >>> 32);
+    }
+
+    /**
+     * How the labels (e.g., the vocabulary of the training data) share ids.
+     */
+    public Collisions collisions(Iterable<String> labels) {
+        Set<String> distinct = new HashSet<>();
+        Map<Integer, MutableInt> bucketSizes = new HashMap<>();
+        for (String label : labels) {
+            if (distinct.add(label))
+                bucketSizes.computeIfAbsent(applyAsInt(label), id -> new MutableInt()).increment();
+        }
+
+        int colliding = 0;
+        int largest = 0;
+        for (MutableInt size : bucketSizes.values()) {
+            if (size.intValue() > 1)
+                colliding += size.intValue();
+            largest = Math.max(largest, size.intValue());
+        }
+        return new Collisions(buckets, distinct.size(), bucketSizes.size(), colliding, largest);
+    }
+
+    public static class Collisions {
+        private final int buckets;
+        private final int labels;
+        private final int usedBuckets;
+        private final int collidingLabels;
+        private final int largestBucket;
+
+        Collisions(int buckets, int labels, int usedBuckets, int collidingLabels, int largestBucket) {
+            this.buckets = buckets;
+            this.labels = labels;
+            this.usedBuckets = usedBuckets;
+            this.collidingLabels = collidingLabels;
+            this.largestBucket = largestBucket;
+        }
+
+        // number of different labels
+        public int getLabels() {
+            return labels;
+        }
+
+        public int getUsedBuckets() {
+            return usedBuckets;
+        }
+
+        // labels that share their id with another label
+        public int getCollidingLabels() {
+            return collidingLabels;
+        }
+
+        // most labels that share one id
+        public int getLargestBucket() {
+            return largestBucket;
+        }
+
+        // share of the labels expected to collide, for labels spread uniformly over the buckets
+        public double getExpectedCollisionRate() {
+            return labels == 0 ? 0 : 1 - Math.pow(1 - 1.0 / buckets, labels - 1);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d labels in %d of %d buckets: %d labels collide (%.4f, expected %.4f), at most %d per bucket",
+                    labels, usedBuckets, buckets, collidingLabels, labels == 0 ? 0 : (double) collidingLabels / labels,
+                    getExpectedCollisionRate(), largestBucket);
+        }
+    }
+}
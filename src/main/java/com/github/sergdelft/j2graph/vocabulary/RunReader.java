@@ -0,0 +1,56 @@
+package com.github.sergdelft.j2graph.vocabulary;
+
+import com.github.sergdelft.j2graph.walker.NodeKind;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Reads a run written by {@link RunWriter}, one record at a time.
+ */
+class RunReader implements Closeable {
+    private final DataInputStream in;
+    private NodeKind kind;
+    private String word;
+    private long count;
+
+    RunReader(Path run) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), 1 << 16));
+    }
+
+    // reads the next record, or returns false at the end of the run
+    boolean next() throws IOException {
+        int ordinal = in.read();
+        if (ordinal < 0)
+            return false;
+
+        char[] chars = new char[in.readInt()];
+        for (int i = 0; i < chars.length; i++)
+            chars[i] = in.readChar();
+        kind = NodeKind.values()[ordinal];
+        word = new String(chars);
+        count = in.readLong();
+        return true;
+    }
+
+    NodeKind kind() {
+        return kind;
+    }
+
+    String word() {
+        return word;
+    }
+
+    long count() {
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
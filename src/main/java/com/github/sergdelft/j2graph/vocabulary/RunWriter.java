@@ -0,0 +1,34 @@
+package com.github.sergdelft.j2graph.vocabulary;
+
+import com.github.sergdelft.j2graph.walker.NodeKind;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes a run of word counts: a sequence of (kind, word, count) records, ordered by kind and then word.
+ * Words are written as UTF-16 chars, so that any string (even a broken surrogate pair) reads back the same.
+ */
+class RunWriter implements Closeable {
+    private final DataOutputStream out;
+
+    RunWriter(Path run) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), 1 << 16));
+    }
+
+    void write(NodeKind kind, String word, long count) throws IOException {
+        out.writeByte(kind.ordinal());
+        out.writeInt(word.length());
+        out.writeChars(word);
+        out.writeLong(count);
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
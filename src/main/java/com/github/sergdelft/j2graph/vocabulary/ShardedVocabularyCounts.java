@@ -0,0 +1,76 @@
+package com.github.sergdelft.j2graph.vocabulary;
+
+import com.github.sergdelft.j2graph.walker.NodeKind;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts words on many threads at once: every thread counts into a shard of its own
+ * (so that counting needs no locks), and the shards are merged at the end.
+ */
+public class ShardedVocabularyCounts implements VocabularyCounter {
+
+    private final List<VocabularyCounts> shards = new ArrayList<>();
+    private final ThreadLocal<VocabularyCounts> shard = ThreadLocal.withInitial(this::newShard);
+
+    // the counts of the calling thread
+    public VocabularyCounts shard() {
+        return shard.get();
+    }
+
+    @Override
+    public void add(NodeKind kind, String word) {
+        shard().add(kind, word);
+    }
+
+    /**
+     * The counts of all shards together. Counting must have ended, e.g., the threads
+     * that counted were joined or their work was handed over through a lock.
+     */
+    public synchronized VocabularyCounts merge() {
+        VocabularyCounts merged = new VocabularyCounts();
+        for (VocabularyCounts counts : shards)
+            merged.addAll(counts);
+        return merged;
+    }
+
+    @Override
+    public Map<NodeKind, List<Map.Entry<String, Long>>> top(long minCount, int topK) {
+        VocabularyCounts merged = merge();
+        Map<NodeKind, List<Map.Entry<String, Long>>> top = new EnumMap<>(NodeKind.class);
+        for (NodeKind kind : NodeKind.values())
+            top.put(kind, merged.top(kind, minCount, topK));
+        return top;
+    }
+
+    @Override
+    public void save(Path file) throws IOException {
+        VocabularyCounts merged = merge();
+        try (RunWriter out = new RunWriter(file)) {
+            for (NodeKind kind : NodeKind.values()) {
+                for (Map.Entry<String, Long> word : merged.sorted(kind))
+                    out.write(kind, word.getKey(), word.getValue());
+            }
+        }
+    }
+
+    @Override
+    public void load(Path file) throws IOException {
+        VocabularyCounts counts = shard();
+        try (RunReader in = new RunReader(file)) {
+            while (in.next())
+                counts.add(in.kind(), in.word(), in.count());
+        }
+    }
+
+    private synchronized VocabularyCounts newShard() {
+        VocabularyCounts counts = new VocabularyCounts();
+        shards.add(counts);
+        return counts;
+    }
+}
@@ -0,0 +1,274 @@
+package com.github.sergdelft.j2graph.vocabulary;
+
+import com.github.sergdelft.j2graph.walker.NodeKind;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts words on many threads at once, for vocabularies that do not fit in memory.
+ * <p>
+ * Every thread counts into a buffer of its own, and writes it to disk as a run of words
+ * in alphabetical order once it holds about {@code bytesPerShard} bytes of words. At the end,
+ * the runs are merged (a k-way merge, summing the counts of equal words), keeping only
+ * the most frequent words of every kind. Memory stays bounded however large the corpus is.
+ * <p>
+ * Words rarer than {@code minCount} are dropped before they are buffered: a count-min sketch
+ * counts every word, and a word is only buffered from the occurrence its estimate reaches
+ * {@code minCount} on, starting at that estimate. Counts are approximate only for the (few) words
+ * that share all counters of the sketch with others: they can be too high by what the others
+ * added before the word reached {@code minCount}, or too low by at most {@code minCount - 1}
+ * when the others pushed its estimate up to {@code minCount} between its occurrences. Such a
+ * word is counted as its estimate instead (see {@link #top(long, int)}), so that, as estimates
+ * are never too low, no word that occurs {@code minCount} times is lost. Which of these words
+ * are counted, and how high, can depend on the order the threads counted them in.
+ * <p>
+ * Saved counts (see {@link #save(Path)}) are a run of all words so far; the sketch goes
+ * to a file of its own next to it, named after it (e.g., vocabulary.bin.sketch).
+ */
+public class SpillingVocabularyCounts implements VocabularyCounter {
+
+    public static final int SKETCH_DEPTH = 4;
+
+    // runs merged at once, i.e., files open at once while merging
+    static final int MAX_MERGE_FAN_IN = 64;
+
+    // memory taken by a buffered word, besides its characters (hash map entry, string and count)
+    private static final long BYTES_PER_WORD = 112;
+
+    private static final Comparator<RunReader> BY_WORD =
+            Comparator.<RunReader, NodeKind>comparing(RunReader::kind).thenComparing(RunReader::word);
+
+    private final Path directory;
+    private final long bytesPerShard;
+    private final long minCount;
+    private final CountMinSketch sketch;
+
+    private final List<Shard> shards = new ArrayList<>();
+    private final ThreadLocal<Shard> shard = ThreadLocal.withInitial(this::newShard);
+    private final List<Path> runs = new ArrayList<>();
+    private final AtomicInteger nextRun = new AtomicInteger();
+
+    /**
+     * @param parent the directory to write the runs in (in a directory of their own, deleted on close)
+     * @param sketchWidth counters per row of the count-min sketch; not used when {@code minCount} is 1 or less
+     */
+    public SpillingVocabularyCounts(Path parent, long bytesPerShard, int sketchWidth, long minCount) throws IOException {
+        if (bytesPerShard < 1)
+            throw new IllegalArgumentException("shards must hold at least 1 byte: " + bytesPerShard);
+
+        this.bytesPerShard = bytesPerShard;
+        this.minCount = minCount;
+        this.sketch = minCount > 1 ? new CountMinSketch(SKETCH_DEPTH, sketchWidth) : null;
+        this.directory = Files.createTempDirectory(parent, "vocabulary");
+    }
+
+    @Override
+    public void add(NodeKind kind, String word) {
+        long count = admit(kind, word);
+        if (count == 0)
+            return;
+
+        Shard shard = this.shard.get();
+        int words = shard.counts.size(kind);
+        shard.counts.add(kind, word, count);
+        if (shard.counts.size(kind) > words) {
+            shard.bytes += BYTES_PER_WORD + 2L * word.length();
+            if (shard.bytes >= bytesPerShard)
+                spill(shard);
+        }
+    }
+
+    // how much to count for this occurrence: 0 while the word is rarer than minCount
+    private long admit(NodeKind kind, String word) {
+        if (sketch == null || sketch.estimate(kind.ordinal(), word) >= minCount)
+            return 1;
+
+        // reaching minCount must be seen by exactly one thread, or the estimate would be counted twice
+        synchronized (sketch) {
+            if (sketch.estimate(kind.ordinal(), word) >= minCount)
+                return 1;
+
+            int estimate = sketch.add(kind.ordinal(), word);
+            return estimate >= minCount ? estimate : 0;
+        }
+    }
+
+    // number of runs written so far
+    public synchronized int runs() {
+        return runs.size();
+    }
+
+    /**
+     * Merges the runs and the buffers of all threads. Counting must have ended, e.g., the threads
+     * that counted were joined or their work was handed over through a lock.
+     */
+    @Override
+    public synchronized Map<NodeKind, List<Map.Entry<String, Long>>> top(long minCount, int topK) throws IOException {
+        Map<NodeKind, TopWords> top = new EnumMap<>(NodeKind.class);
+        for (NodeKind kind : NodeKind.values())
+            top.put(kind, new TopWords(minCount, topK));
+
+        spillAll();
+        mergeRuns(MAX_MERGE_FAN_IN);
+        merge(runs, (kind, word, count) -> top.get(kind).offer(word, atLeastEstimate(kind, word, count)));
+
+        Map<NodeKind, List<Map.Entry<String, Long>>> words = new EnumMap<>(NodeKind.class);
+        top.forEach((kind, kindTop) -> words.put(kind, kindTop.words()));
+        return words;
+    }
+
+    // a word buffered only after others pushed its estimate up missed its first occurrences, which the sketch still has
+    private long atLeastEstimate(NodeKind kind, String word, long count) {
+        return sketch == null ? count : Math.max(count, sketch.estimate(kind.ordinal(), word));
+    }
+
+    /**
+     * Merges the runs and the buffers of all threads into one run, and copies it to the file.
+     * Counting must be paused, as for {@link #top(long, int)}.
+     */
+    @Override
+    public synchronized void save(Path file) throws IOException {
+        spillAll();
+        mergeRuns(1);
+        if (runs.isEmpty())
+            new RunWriter(file).close();
+        else
+            Files.copy(runs.get(0), file, StandardCopyOption.REPLACE_EXISTING);
+
+        if (sketch != null)
+            sketch.save(sketchFile(file));
+    }
+
+    @Override
+    public synchronized void load(Path file) throws IOException {
+        Path run = nextRunPath();
+        Files.copy(file, run);
+        runs.add(run);
+
+        if (sketch != null)
+            sketch.load(sketchFile(file));
+    }
+
+    public static Path sketchFile(Path file) {
+        return file.resolveSibling(file.getFileName() + ".sketch");
+    }
+
+    // deletes the runs
+    @Override
+    public synchronized void close() throws IOException {
+        for (Path run : runs)
+            Files.deleteIfExists(run);
+        runs.clear();
+        Files.deleteIfExists(directory);
+    }
+
+    private void spillAll() throws IOException {
+        try {
+            for (Shard shard : shards) {
+                if (shard.bytes > 0)
+                    spill(shard);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // merges the oldest runs into bigger ones, until there are at most maxRuns
+    private void mergeRuns(int maxRuns) throws IOException {
+        while (runs.size() > maxRuns) {
+            int fanIn = Math.min(runs.size() - maxRuns + 1, MAX_MERGE_FAN_IN);
+            List<Path> merged = new ArrayList<>(runs.subList(0, fanIn));
+            Path run = nextRunPath();
+            try (RunWriter out = new RunWriter(run)) {
+                merge(merged, out::write);
+            }
+            runs.subList(0, fanIn).clear();
+            runs.add(run);
+            for (Path path : merged)
+                Files.delete(path);
+        }
+    }
+
+    private void spill(Shard shard) {
+        Path run = nextRunPath();
+        try (RunWriter out = new RunWriter(run)) {
+            for (NodeKind kind : NodeKind.values()) {
+                for (Map.Entry<String, Long> word : shard.counts.sorted(kind))
+                    out.write(kind, word.getKey(), word.getValue());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        shard.counts.clear();
+        shard.bytes = 0;
+        synchronized (this) {
+            runs.add(run);
+        }
+    }
+
+    private Path nextRunPath() {
+        return directory.resolve("run-" + nextRun.getAndIncrement() + ".bin");
+    }
+
+    // streams the words of all runs in order, with the counts of every word summed
+    private static void merge(List<Path> runs, WordCounts out) throws IOException {
+        List<RunReader> readers = new ArrayList<>();
+        try {
+            PriorityQueue<RunReader> queue = new PriorityQueue<>(BY_WORD);
+            for (Path run : runs) {
+                RunReader reader = new RunReader(run);
+                readers.add(reader);
+                if (reader.next())
+                    queue.add(reader);
+            }
+
+            while (!queue.isEmpty()) {
+                RunReader first = queue.poll();
+                NodeKind kind = first.kind();
+                String word = first.word();
+                long count = first.count();
+                if (first.next())
+                    queue.add(first);
+
+                while (!queue.isEmpty() && queue.peek().kind() == kind && queue.peek().word().equals(word)) {
+                    RunReader same = queue.poll();
+                    count += same.count();
+                    if (same.next())
+                        queue.add(same);
+                }
+
+                out.write(kind, word, count);
+            }
+        } finally {
+            for (RunReader reader : readers)
+                reader.close();
+        }
+    }
+
+    private synchronized Shard newShard() {
+        Shard shard = new Shard();
+        shards.add(shard);
+        return shard;
+    }
+
+    private static class Shard {
+        private final VocabularyCounts counts = new VocabularyCounts();
+        private long bytes;
+    }
+
+    private interface WordCounts {
+        void write(NodeKind kind, String word, long count) throws IOException;
+    }
+}
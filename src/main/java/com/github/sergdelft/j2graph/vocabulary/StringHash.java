@@ -0,0 +1,27 @@
+package com.github.sergdelft.j2graph.vocabulary;
+
+/**
+ * Seeded 64-bit hash of strings: FNV-1a over the chars, with the bits spread
+ * over the whole word by the finalizer of MurmurHash3.
+ */
+final class StringHash {
+
+    private StringHash() {
+    }
+
+    static long hash(long seed, String string) {
+        long hash = 0xcbf29ce484222325L ^ seed;
+        hash *= 0x100000001b3L;
+        for (int i = 0; i < string.length(); i++) {
+            hash ^= string.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
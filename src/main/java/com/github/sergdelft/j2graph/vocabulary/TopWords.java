@@ -0,0 +1,49 @@
+package com.github.sergdelft.j2graph.vocabulary;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import static com.github.sergdelft.j2graph.vocabulary.VocabularyCounts.BY_FREQUENCY;
+
+/**
+ * Keeps the {@code topK} most frequent words that occur at least {@code minCount} times,
+ * out of words offered one at a time.
+ */
+class TopWords {
+
+    private final long minCount;
+    private final int topK;
+
+    // the k most frequent words seen so far, with the least frequent on top
+    private final PriorityQueue<Map.Entry<String, Long>> top = new PriorityQueue<>(BY_FREQUENCY.reversed());
+
+    TopWords(long minCount, int topK) {
+        if (topK < 0)
+            throw new IllegalArgumentException("top k must be at least 0: " + topK);
+
+        this.minCount = minCount;
+        this.topK = topK;
+    }
+
+    void offer(String word, long count) {
+        if (count < minCount || topK == 0)
+            return;
+
+        Map.Entry<String, Long> entry = Map.entry(word, count);
+        if (top.size() < topK) {
+            top.add(entry);
+        } else if (BY_FREQUENCY.compare(entry, top.peek()) < 0) {
+            top.poll();
+            top.add(entry);
+        }
+    }
+
+    // most frequent first
+    List<Map.Entry<String, Long>> words() {
+        List<Map.Entry<String, Long>> words = new ArrayList<>(top);
+        words.sort(BY_FREQUENCY);
+        return words;
+    }
+}
@@ -0,0 +1,36 @@
+package com.github.sergdelft.j2graph.vocabulary;
+
+import com.github.sergdelft.j2graph.walker.NodeKind;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts the words of a corpus, per kind of node, on any number of threads.
+ */
+public interface VocabularyCounter extends Closeable {
+
+    void add(NodeKind kind, String word);
+
+    /**
+     * The {@code topK} most frequent words of every kind that occur at least {@code minCount} times,
+     * ordered as by {@link VocabularyCounts#top(NodeKind, long, int)}. Counting must have ended.
+     */
+    Map<NodeKind, List<Map.Entry<String, Long>>> top(long minCount, int topK) throws IOException;
+
+    /**
+     * Writes the counts so far to {@code file}, e.g., to go on counting after a restart
+     * (see {@link #load(Path)}). Counting must be paused while the counts are saved.
+     */
+    void save(Path file) throws IOException;
+
+    // adds the counts saved to the file
+    void load(Path file) throws IOException;
+
+    @Override
+    default void close() throws IOException {
+    }
+}
@@ -0,0 +1,134 @@
+package com.github.sergdelft.j2graph.vocabulary;
+
+import com.github.sergdelft.j2graph.walker.NodeKind;
+import org.apache.commons.lang3.mutable.MutableLong;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * How often every word occurs, with a separate vocabulary per kind of node
+ * (e.g., the names of tokens and the names of non-terminals are counted apart).
+ * <p>
+ * Not thread-safe: concurrent counting goes through {@link ShardedVocabularyCounts}
+ * (or {@link SpillingVocabularyCounts}, when the words do not fit in memory).
+ */
+public class VocabularyCounts {
+
+    // the most frequent words first, and words of the same frequency in alphabetical order
+    static final Comparator<Map.Entry<String, Long>> BY_FREQUENCY =
+            Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey());
+
+    private final Map<NodeKind, Map<String, MutableLong>> counts = new EnumMap<>(NodeKind.class);
+
+    public void add(NodeKind kind, String word) {
+        add(kind, word, 1);
+    }
+
+    public void add(NodeKind kind, String word, long count) {
+        counts.computeIfAbsent(kind, k -> new HashMap<>())
+                .computeIfAbsent(word, w -> new MutableLong())
+                .add(count);
+    }
+
+    public void addAll(VocabularyCounts other) {
+        for (Map.Entry<NodeKind, Map<String, MutableLong>> kind : other.counts.entrySet()) {
+            for (Map.Entry<String, MutableLong> word : kind.getValue().entrySet())
+                add(kind.getKey(), word.getKey(), word.getValue().longValue());
+        }
+    }
+
+    public long count(NodeKind kind, String word) {
+        MutableLong count = counts.getOrDefault(kind, Map.of()).get(word);
+        return count == null ? 0 : count.longValue();
+    }
+
+    // number of different words of the kind
+    public int size(NodeKind kind) {
+        return counts.getOrDefault(kind, Map.of()).size();
+    }
+
+    /**
+     * The {@code topK} most frequent words of the kind that occur at least {@code minCount} times,
+     * most frequent first (and in alphabetical order among words of the same frequency).
+     */
+    public List<Map.Entry<String, Long>> top(NodeKind kind, long minCount, int topK) {
+        TopWords top = new TopWords(minCount, topK);
+        for (Map.Entry<String, MutableLong> word : counts.getOrDefault(kind, Map.of()).entrySet())
+            top.offer(word.getKey(), word.getValue().longValue());
+        return top.words();
+    }
+
+    // the words of the kind, in alphabetical order
+    List<Map.Entry<String, Long>> sorted(NodeKind kind) {
+        List<Map.Entry<String, Long>> words = new ArrayList<>(size(kind));
+        for (Map.Entry<String, MutableLong> word : counts.getOrDefault(kind, Map.of()).entrySet())
+            words.add(Map.entry(word.getKey(), word.getValue().longValue()));
+        words.sort(Map.Entry.comparingByKey());
+        return words;
+    }
+
+    void clear() {
+        counts.clear();
+    }
+
+    /**
+     * Writes the vocabulary of the kind as one {@code word<TAB>count} line per word, ordered as
+     * by {@link #top(NodeKind, long, int)}. Backslashes, tabs and line breaks in words are
+     * escaped (as \\, \t, \n and \r), so that every word fits on its line.
+     */
+    public void write(NodeKind kind, Writer out, long minCount, int topK) throws IOException {
+        write(top(kind, minCount, topK), out);
+    }
+
+    // writes the words in the format of write(NodeKind, Writer, long, int), in the given order
+    public static void write(List<Map.Entry<String, Long>> words, Writer out) throws IOException {
+        for (Map.Entry<String, Long> word : words) {
+            out.write(escape(word.getKey()));
+            out.write('\t');
+            out.write(Long.toString(word.getValue()));
+            out.write('\n');
+        }
+        out.flush();
+    }
+
+    static String escape(String word) {
+        StringBuilder escaped = null;
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            String replacement = c == '\\' ? "\\\\" : c == '\t' ? "\\t" : c == '\n' ? "\\n" : c == '\r' ? "\\r" : null;
+            if (replacement != null && escaped == null)
+                escaped = new StringBuilder(word.length() + 8).append(word, 0, i);
+            if (escaped != null) {
+                if (replacement != null)
+                    escaped.append(replacement);
+                else
+                    escaped.append(c);
+            }
+        }
+        return escaped == null ? word : escaped.toString();
+    }
+
+    // undoes escape(String)
+    static String unescape(String escaped) {
+        if (escaped.indexOf('\\') < 0)
+            return escaped;
+
+        StringBuilder word = new StringBuilder(escaped.length());
+        for (int i = 0; i < escaped.length(); i++) {
+            char c = escaped.charAt(i);
+            if (c == '\\' && i + 1 < escaped.length()) {
+                char next = escaped.charAt(++i);
+                c = next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next;
+            }
+            word.append(c);
+        }
+        return word.toString();
+    }
+}
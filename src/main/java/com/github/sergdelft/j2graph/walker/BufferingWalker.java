@@ -0,0 +1,194 @@
+package com.github.sergdelft.j2graph.walker;
+
+import com.github.sergdelft.j2graph.graph.*;
+
+import java.util.Arrays;
+
+/**
+ * Base class for sinks that write one method at a time.
+ * <p>
+ * The nodes of the current method get dense ids (0..nodeCount-1) in the order
+ * the {@link GraphWalker} visits them. As the ICLR20-Great visitor does, the ids
+ * are assigned with setId, so they replace whatever ids the nodes had before.
+ * Edges are kept in the order of the arguments of the walker callbacks, and only
+ * when both ends belong to the current method (e.g., a 'returns to' edge to
+ * another method of the class is left out).
+ * <p>
+ * When the method ends, {@link #writeMethod(String, NonTerminal)} is called with the
+ * buffers filled in. The buffers are reused from method to method, so subclasses
+ * must not hold on to them.
+ */
+public abstract class BufferingWalker implements CorpusWalker {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private String className;
+
+    private int nodeCount = 0;
+    private Object[] nodes = new Object[INITIAL_CAPACITY];
+    private String[] labels = new String[INITIAL_CAPACITY];
+    private NodeKind[] nodeKinds = new NodeKind[INITIAL_CAPACITY];
+
+    private int edgeCount = 0;
+    private int[] edgeFrom = new int[INITIAL_CAPACITY];
+    private int[] edgeTo = new int[INITIAL_CAPACITY];
+    private EdgeKind[] edgeKinds = new EdgeKind[INITIAL_CAPACITY];
+
+    protected abstract void writeMethod(String methodName, NonTerminal root);
+
+    @Override
+    public void className(String className) {
+        this.className = className;
+    }
+
+    @Override
+    public void method(String methodName, NonTerminal root) {
+        nodeCount = 0;
+        edgeCount = 0;
+    }
+
+    @Override
+    public void nonTerminal(NonTerminal nonTerminal) {
+        nonTerminal.setId(addNode(nonTerminal, nonTerminal.getName(), NodeKind.NON_TERMINAL));
+    }
+
+    @Override
+    public void token(Token token) {
+        token.setId(addNode(token, token.getTokenName(), NodeKind.TOKEN));
+    }
+
+    @Override
+    public void symbol(Symbol symbol) {
+        symbol.setId(addNode(symbol, symbol.getSymbol(), NodeKind.SYMBOL));
+    }
+
+    @Override
+    public void vocabulary(Vocabulary vocabulary) {
+        vocabulary.setId(addNode(vocabulary, vocabulary.getWord(), NodeKind.VOCABULARY));
+    }
+
+    @Override
+    public void nextToken(Token t1, Token t2) {
+        addEdge(t1, t1.getId(), t2, t2.getId(), EdgeKind.NEXT_TOKEN);
+    }
+
+    @Override
+    public void child(NonTerminal t1, Token t2) {
+        addEdge(t1, t1.getId(), t2, t2.getId(), EdgeKind.CHILD);
+    }
+
+    @Override
+    public void child(NonTerminal t1, NonTerminal t2) {
+        addEdge(t1, t1.getId(), t2, t2.getId(), EdgeKind.CHILD);
+    }
+
+    @Override
+    public void occurrenceOf(Token t1, Symbol t2) {
+        addEdge(t1, t1.getId(), t2, t2.getId(), EdgeKind.OCCURRENCE_OF);
+    }
+
+    @Override
+    public void subtokenOf(Vocabulary t1, Token t2) {
+        addEdge(t1, t1.getId(), t2, t2.getId(), EdgeKind.SUBTOKEN_OF);
+    }
+
+    @Override
+    public void returnsTo(NonTerminal t1, Token t2) {
+        addEdge(t1, t1.getId(), t2, t2.getId(), EdgeKind.RETURNS_TO);
+    }
+
+    @Override
+    public void nextLexicalUse(Token t1, Token t2) {
+        addEdge(t1, t1.getId(), t2, t2.getId(), EdgeKind.NEXT_LEXICAL_USE);
+    }
+
+    @Override
+    public void assignedFrom(Token t1, NonTerminal t2) {
+        addEdge(t1, t1.getId(), t2, t2.getId(), EdgeKind.ASSIGNED_FROM);
+    }
+
+    @Override
+    public void endMethod(String methodName, NonTerminal root) {
+        writeMethod(methodName, root);
+
+        // do not keep the graph alive after the method is written
+        Arrays.fill(nodes, 0, nodeCount, null);
+    }
+
+    @Override
+    public void end() {
+    }
+
+    protected String getClassName() {
+        return className;
+    }
+
+    protected int nodeCount() {
+        return nodeCount;
+    }
+
+    protected Object node(int id) {
+        return nodes[id];
+    }
+
+    protected String label(int id) {
+        return labels[id];
+    }
+
+    protected NodeKind nodeKind(int id) {
+        return nodeKinds[id];
+    }
+
+    protected int edgeCount() {
+        return edgeCount;
+    }
+
+    protected int edgeFrom(int edge) {
+        return edgeFrom[edge];
+    }
+
+    protected int edgeTo(int edge) {
+        return edgeTo[edge];
+    }
+
+    protected EdgeKind edgeKind(int edge) {
+        return edgeKinds[edge];
+    }
+
+    // a node belongs to the method if its (possibly stale) id points back to itself
+    protected boolean inMethod(Object node, int id) {
+        return id >= 0 && id < nodeCount && nodes[id] == node;
+    }
+
+    private int addNode(Object node, String label, NodeKind kind) {
+        if (nodeCount == nodes.length) {
+            int capacity = nodes.length * 2;
+            nodes = Arrays.copyOf(nodes, capacity);
+            labels = Arrays.copyOf(labels, capacity);
+            nodeKinds = Arrays.copyOf(nodeKinds, capacity);
+        }
+
+        int id = nodeCount++;
+        nodes[id] = node;
+        labels[id] = label;
+        nodeKinds[id] = kind;
+        return id;
+    }
+
+    private void addEdge(Object from, int fromId, Object to, int toId, EdgeKind kind) {
+        if (!inMethod(from, fromId) || !inMethod(to, toId))
+            return;
+
+        if (edgeCount == edgeFrom.length) {
+            int capacity = edgeFrom.length * 2;
+            edgeFrom = Arrays.copyOf(edgeFrom, capacity);
+            edgeTo = Arrays.copyOf(edgeTo, capacity);
+            edgeKinds = Arrays.copyOf(edgeKinds, capacity);
+        }
+
+        edgeFrom[edgeCount] = fromId;
+        edgeTo[edgeCount] = toId;
+        edgeKinds[edgeCount] = kind;
+        edgeCount++;
+    }
+}
@@ -0,0 +1,56 @@
+package com.github.sergdelft.j2graph.walker;
+
+import com.github.sergdelft.j2graph.graph.ClassGraph;
+
+import java.nio.file.Path;
+
+/**
+ * Walks the class graphs of many files through a single, long-lived {@link CorpusWalker}.
+ * <p>
+ * Files are grouped in batches of {@code batchSize} files. Every file produces a
+ * beginFile/endFile pair, even when it could not be parsed (i.e., its graph is null).
+ * {@link #end()} must be called once the corpus is over, so that the last
+ * (possibly incomplete) batch is closed.
+ */
+public class CorpusGraphWalker {
+
+    private final GraphWalker graphWalker = new GraphWalker();
+    private final CorpusWalker visitor;
+    private final int batchSize;
+
+    private int batch = 0;
+    private int filesInBatch = 0;
+
+    public CorpusGraphWalker(CorpusWalker visitor, int batchSize) {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("batch size must be positive: " + batchSize);
+
+        this.visitor = visitor;
+        this.batchSize = batchSize;
+    }
+
+    public void accept(Path file, ClassGraph classGraph) {
+        if (filesInBatch == 0)
+            visitor.beginBatch(batch);
+
+        visitor.beginFile(file);
+        if (classGraph != null)
+            graphWalker.accept(classGraph, visitor);
+        visitor.endFile(file);
+
+        filesInBatch++;
+        if (filesInBatch == batchSize)
+            endBatch();
+    }
+
+    public void end() {
+        if (filesInBatch > 0)
+            endBatch();
+    }
+
+    private void endBatch() {
+        visitor.endBatch(batch);
+        batch++;
+        filesInBatch = 0;
+    }
+}
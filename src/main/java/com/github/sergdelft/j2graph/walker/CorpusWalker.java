@@ -0,0 +1,26 @@
+package com.github.sergdelft.j2graph.walker;
+
+import java.nio.file.Path;
+
+/**
+ * A {@link Walker} that outlives a single class graph.
+ * <p>
+ * On top of the class/method events, it is told where each source file
+ * and each batch of files starts and ends, so that sinks can keep buffers,
+ * dictionaries and open files across the whole corpus and flush at the
+ * boundaries they care about. See {@link CorpusGraphWalker}.
+ */
+public interface CorpusWalker extends Walker {
+
+    default void beginBatch(int batch) {
+    }
+
+    default void endBatch(int batch) {
+    }
+
+    default void beginFile(Path file) {
+    }
+
+    default void endFile(Path file) {
+    }
+}
@@ -0,0 +1,33 @@
+package com.github.sergdelft.j2graph.walker;
+
+/**
+ * The kinds of edges a {@link Walker} is told about.
+ * <p>
+ * The numeric values follow the ones used in the ICLR20-Great output,
+ * and the labels are the ones that appear in the dot output.
+ */
+public enum EdgeKind {
+    NEXT_TOKEN(0, "next token"),
+    CHILD(1, "child"),
+    OCCURRENCE_OF(2, "occurence of"),
+    SUBTOKEN_OF(3, "subtoken of"),
+    RETURNS_TO(4, "returns to"),
+    NEXT_LEXICAL_USE(5, "next lexical use"),
+    ASSIGNED_FROM(6, "assigned from");
+
+    private final int value;
+    private final String label;
+
+    EdgeKind(int value, String label) {
+        this.value = value;
+        this.label = label;
+    }
+
+    public int getValue() {
+        return value;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+}
@@ -0,0 +1,38 @@
+package com.github.sergdelft.j2graph.walker;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+/**
+ * Random numbers per file of a corpus, derived from one global seed and the path of the file.
+ * <p>
+ * The numbers drawn for a file only depend on the seed and its path (as given, with '/'
+ * as separator), not on the files that came before it or on the thread that processes
+ * it, so that a run can be reproduced with any number of workers. Give the path relative
+ * to the corpus, or the numbers change when the corpus is moved.
+ */
+public final class FileRandom {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private FileRandom() {
+    }
+
+    public static SplittableRandom forFile(long seed, Path file) {
+        return new SplittableRandom(seed * GOLDEN_GAMMA ^ hash(file));
+    }
+
+    // 64-bit FNV-1a of the path
+    static long hash(Path file) {
+        long hash = FNV_OFFSET;
+        for (byte b : file.toString().replace(File.separatorChar, '/').getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+}
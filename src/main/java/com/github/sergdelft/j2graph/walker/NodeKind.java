@@ -0,0 +1,21 @@
+package com.github.sergdelft.j2graph.walker;
+
+/**
+ * The kinds of nodes a {@link Walker} is told about.
+ */
+public enum NodeKind {
+    NON_TERMINAL(0),
+    TOKEN(1),
+    SYMBOL(2),
+    VOCABULARY(3);
+
+    private final int value;
+
+    NodeKind(int value) {
+        this.value = value;
+    }
+
+    public int getValue() {
+        return value;
+    }
+}
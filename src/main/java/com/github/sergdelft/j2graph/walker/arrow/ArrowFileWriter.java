@@ -0,0 +1,246 @@
+package com.github.sergdelft.j2graph.walker.arrow;
+
+import com.github.sergdelft.j2graph.walker.arrow.FlatBuffer.Table;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Writes one table as an Arrow IPC file (format version V5), in record batches of at most
+ * {@code batchRows} rows. Columns are non-nullable little-endian integers or UTF-8 strings.
+ * <p>
+ * Rows are filled column by column with the set methods, and closed with {@link #endRow()}.
+ * The file is complete (i.e., has its footer) only after {@link #close()}.
+ */
+class ArrowFileWriter implements Closeable {
+
+    enum ColumnType {
+        INT8(8), INT32(32), INT64(64), UTF8(0);
+
+        private final int bitWidth;
+
+        ColumnType(int bitWidth) {
+            this.bitWidth = bitWidth;
+        }
+    }
+
+    private static final byte[] MAGIC = "ARROW1".getBytes(StandardCharsets.US_ASCII);
+    private static final int CONTINUATION = 0xFFFFFFFF;
+    private static final int METADATA_V5 = 4;
+    private static final int HEADER_SCHEMA = 1;
+    private static final int HEADER_RECORD_BATCH = 3;
+    private static final int TYPE_INT = 2;
+    private static final int TYPE_UTF8 = 5;
+
+    private final OutputStream out;
+    private final String[] names;
+    private final ColumnType[] types;
+    private final int batchRows;
+
+    private long position = 0;
+    private byte[] blocks = new byte[0];
+
+    private int rows = 0;
+    private final long[][] integers;
+    private final int[][] stringOffsets;
+    private final byte[][] stringData;
+
+    ArrowFileWriter(Path file, String[] names, ColumnType[] types, int batchRows) throws IOException {
+        if (batchRows < 1)
+            throw new IllegalArgumentException("batches must have at least one row: " + batchRows);
+
+        this.out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16);
+        this.names = names;
+        this.types = types;
+        this.batchRows = batchRows;
+
+        this.integers = new long[types.length][];
+        this.stringOffsets = new int[types.length][];
+        this.stringData = new byte[types.length][];
+        for (int column = 0; column < types.length; column++) {
+            if (types[column] == ColumnType.UTF8) {
+                stringOffsets[column] = new int[batchRows + 1];
+                stringData[column] = new byte[1024];
+            } else {
+                integers[column] = new long[batchRows];
+            }
+        }
+
+        write(MAGIC);
+        write(new byte[2]);
+        writeMessage(message(HEADER_SCHEMA, schema(), 0), new byte[0], 0);
+    }
+
+    void set(int column, long value) {
+        integers[column][rows] = value;
+    }
+
+    void set(int column, String value) {
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        int start = stringOffsets[column][rows];
+        if (start + utf8.length > stringData[column].length)
+            stringData[column] = Arrays.copyOf(stringData[column], Math.max(2 * stringData[column].length, start + utf8.length));
+
+        System.arraycopy(utf8, 0, stringData[column], start, utf8.length);
+        stringOffsets[column][rows + 1] = start + utf8.length;
+    }
+
+    void endRow() throws IOException {
+        rows++;
+        if (rows == batchRows)
+            writeBatch();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (rows > 0)
+            writeBatch();
+
+        // end-of-stream marker, then the footer
+        writeInt(CONTINUATION);
+        writeInt(0);
+
+        byte[] footer = FlatBuffer.serialize(new Table()
+                .scalar(0, 2, METADATA_V5)
+                .table(1, schema())
+                .structs(2, 24, 8, new byte[0])
+                .structs(3, 24, 8, blocks));
+        write(footer);
+        writeInt(footer.length);
+        write(MAGIC);
+        out.close();
+    }
+
+    private void writeBatch() throws IOException {
+        int buffersPerColumn = 0;
+        for (ColumnType type : types)
+            buffersPerColumn += type == ColumnType.UTF8 ? 3 : 2;
+
+        byte[] nodes = new byte[16 * types.length];
+        byte[] buffers = new byte[16 * buffersPerColumn];
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        int buffer = 0;
+        for (int column = 0; column < types.length; column++) {
+            putLong(nodes, 16 * column, rows);
+            putLong(nodes, 16 * column + 8, 0);
+
+            // no nulls, so the validity bitmap is left out
+            buffer = addBuffer(buffers, buffer, body, new byte[0], 0);
+
+            if (types[column] == ColumnType.UTF8) {
+                byte[] offsets = new byte[4 * (rows + 1)];
+                for (int row = 0; row <= rows; row++)
+                    putInt(offsets, 4 * row, stringOffsets[column][row]);
+                buffer = addBuffer(buffers, buffer, body, offsets, offsets.length);
+                buffer = addBuffer(buffers, buffer, body, stringData[column], stringOffsets[column][rows]);
+            } else {
+                int width = types[column].bitWidth / 8;
+                byte[] values = new byte[width * rows];
+                for (int row = 0; row < rows; row++) {
+                    for (int i = 0; i < width; i++)
+                        values[width * row + i] = (byte) (integers[column][row] >>> (8 * i));
+                }
+                buffer = addBuffer(buffers, buffer, body, values, values.length);
+            }
+        }
+
+        Table recordBatch = new Table()
+                .scalar(0, 8, rows)
+                .structs(1, 16, 8, nodes)
+                .structs(2, 16, 8, buffers);
+
+        long offset = position;
+        int metadataLength = writeMessage(message(HEADER_RECORD_BATCH, recordBatch, body.size()), body.toByteArray(), body.size());
+
+        byte[] block = new byte[24];
+        putLong(block, 0, offset);
+        putInt(block, 8, metadataLength);
+        putLong(block, 16, body.size());
+        blocks = Arrays.copyOf(blocks, blocks.length + 24);
+        System.arraycopy(block, 0, blocks, blocks.length - 24, 24);
+
+        rows = 0;
+    }
+
+    // appends the buffer to the body (8-byte aligned), and describes it in 'buffers'
+    private int addBuffer(byte[] buffers, int buffer, ByteArrayOutputStream body, byte[] data, int length) {
+        putLong(buffers, 16 * buffer, body.size());
+        putLong(buffers, 16 * buffer + 8, length);
+        body.write(data, 0, length);
+        body.write(new byte[padding(length)], 0, padding(length));
+        return buffer + 1;
+    }
+
+    private Table message(int headerType, Table header, long bodyLength) {
+        return new Table()
+                .scalar(0, 2, METADATA_V5)
+                .scalar(1, 1, headerType)
+                .table(2, header)
+                .scalar(3, 8, bodyLength);
+    }
+
+    private Table schema() {
+        Table[] fields = new Table[types.length];
+        for (int column = 0; column < types.length; column++) {
+            boolean utf8 = types[column] == ColumnType.UTF8;
+            Table type = utf8 ? new Table() : new Table()
+                    .scalar(0, 4, types[column].bitWidth)
+                    .scalar(1, 1, 1);
+
+            fields[column] = new Table()
+                    .string(0, names[column])
+                    .scalar(1, 1, 0)
+                    .scalar(2, 1, utf8 ? TYPE_UTF8 : TYPE_INT)
+                    .table(3, type)
+                    .tables(5);
+        }
+
+        return new Table()
+                .scalar(0, 2, 0)
+                .tables(1, fields);
+    }
+
+    // continuation, metadata length, metadata (padded so that the body is 8-byte aligned), body
+    private int writeMessage(Table message, byte[] body, int bodyLength) throws IOException {
+        byte[] metadata = FlatBuffer.serialize(message);
+        int paddedLength = metadata.length + padding(8 + metadata.length);
+
+        writeInt(CONTINUATION);
+        writeInt(paddedLength);
+        write(metadata);
+        write(new byte[paddedLength - metadata.length]);
+        out.write(body, 0, bodyLength);
+        position += bodyLength;
+
+        return 8 + paddedLength;
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        out.write(bytes);
+        position += bytes.length;
+    }
+
+    private void writeInt(int value) throws IOException {
+        byte[] bytes = new byte[4];
+        putInt(bytes, 0, value);
+        write(bytes);
+    }
+
+    private static int padding(int length) {
+        return (8 - length % 8) % 8;
+    }
+
+    private static void putLong(byte[] bytes, int offset, long value) {
+        for (int i = 0; i < 8; i++)
+            bytes[offset + i] = (byte) (value >>> (8 * i));
+    }
+
+    private static void putInt(byte[] bytes, int offset, int value) {
+        for (int i = 0; i < 4; i++)
+            bytes[offset + i] = (byte) (value >>> (8 * i));
+    }
+}
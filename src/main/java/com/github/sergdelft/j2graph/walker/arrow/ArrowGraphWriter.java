@@ -0,0 +1,112 @@
+package com.github.sergdelft.j2graph.walker.arrow;
+
+import com.github.sergdelft.j2graph.graph.NonTerminal;
+import com.github.sergdelft.j2graph.walker.BufferingWalker;
+import com.github.sergdelft.j2graph.walker.arrow.ArrowFileWriter.ColumnType;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes the method graphs as four Arrow IPC files, straight from the walk:
+ * <ul>
+ *     <li>graphs.arrow: graph_id (int64), class_name (utf8), method_name (utf8), node_count (int32), edge_count (int32)</li>
+ *     <li>nodes.arrow: graph_id (int64), node_id (int32), kind (int8), label_id (int32)</li>
+ *     <li>edges.arrow: graph_id (int64), src (int32), dst (int32), type (int8)</li>
+ *     <li>labels.arrow: label_id (int32), label (utf8)</li>
+ * </ul>
+ * Graph ids number the methods in the order they are written; node ids are the per-method
+ * ids of {@link BufferingWalker}. Kinds and types are the values of
+ * {@link com.github.sergdelft.j2graph.walker.NodeKind} and {@link com.github.sergdelft.j2graph.walker.EdgeKind}.
+ * Each file is written in record batches of at most {@code batchRows} rows, and can be
+ * memory-mapped (e.g., with pyarrow.memory_map) once the writer is closed.
+ */
+public class ArrowGraphWriter extends BufferingWalker implements Closeable {
+
+    private final ArrowFileWriter graphs;
+    private final ArrowFileWriter nodes;
+    private final ArrowFileWriter edges;
+    private final ArrowFileWriter labels;
+
+    private final Map<String, Integer> labelIds = new HashMap<>();
+    private long graphId = 0;
+
+    public ArrowGraphWriter(Path directory, int batchRows) throws IOException {
+        Files.createDirectories(directory);
+
+        graphs = new ArrowFileWriter(directory.resolve("graphs.arrow"),
+                new String[]{"graph_id", "class_name", "method_name", "node_count", "edge_count"},
+                new ColumnType[]{ColumnType.INT64, ColumnType.UTF8, ColumnType.UTF8, ColumnType.INT32, ColumnType.INT32},
+                batchRows);
+        nodes = new ArrowFileWriter(directory.resolve("nodes.arrow"),
+                new String[]{"graph_id", "node_id", "kind", "label_id"},
+                new ColumnType[]{ColumnType.INT64, ColumnType.INT32, ColumnType.INT8, ColumnType.INT32},
+                batchRows);
+        edges = new ArrowFileWriter(directory.resolve("edges.arrow"),
+                new String[]{"graph_id", "src", "dst", "type"},
+                new ColumnType[]{ColumnType.INT64, ColumnType.INT32, ColumnType.INT32, ColumnType.INT8},
+                batchRows);
+        labels = new ArrowFileWriter(directory.resolve("labels.arrow"),
+                new String[]{"label_id", "label"},
+                new ColumnType[]{ColumnType.INT32, ColumnType.UTF8},
+                batchRows);
+    }
+
+    @Override
+    protected void writeMethod(String methodName, NonTerminal root) {
+        try {
+            graphs.set(0, graphId);
+            graphs.set(1, getClassName());
+            graphs.set(2, methodName);
+            graphs.set(3, nodeCount());
+            graphs.set(4, edgeCount());
+            graphs.endRow();
+
+            for (int id = 0; id < nodeCount(); id++) {
+                nodes.set(0, graphId);
+                nodes.set(1, id);
+                nodes.set(2, nodeKind(id).getValue());
+                nodes.set(3, labelId(label(id)));
+                nodes.endRow();
+            }
+
+            for (int edge = 0; edge < edgeCount(); edge++) {
+                edges.set(0, graphId);
+                edges.set(1, edgeFrom(edge));
+                edges.set(2, edgeTo(edge));
+                edges.set(3, edgeKind(edge).getValue());
+                edges.endRow();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        graphId++;
+    }
+
+    private int labelId(String label) throws IOException {
+        Integer id = labelIds.get(label);
+        if (id == null) {
+            id = labelIds.size();
+            labelIds.put(label, id);
+
+            labels.set(0, id);
+            labels.set(1, label);
+            labels.endRow();
+        }
+        return id;
+    }
+
+    @Override
+    public void close() throws IOException {
+        graphs.close();
+        nodes.close();
+        edges.close();
+        labels.close();
+    }
+}
@@ -0,0 +1,204 @@
+package com.github.sergdelft.j2graph.walker.arrow;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Just enough of FlatBuffers to write the Arrow IPC metadata.
+ * <p>
+ * A message is described as a tree of {@link Table}s, vectors and strings, and
+ * {@link #serialize(Table)} lays it out front to back: every table is preceded by
+ * its vtable, and everything a table (or vector) points to comes after it, so that
+ * all uoffsets point forward. Scalars are aligned to their size, assuming the
+ * buffer itself starts 8-byte aligned.
+ */
+final class FlatBuffer {
+
+    private byte[] bytes = new byte[512];
+    private int size = 0;
+
+    private FlatBuffer() {
+    }
+
+    static byte[] serialize(Table root) {
+        FlatBuffer buffer = new FlatBuffer();
+        buffer.grow(4);
+        buffer.size = 4;
+        buffer.patchOffset(0, buffer.writeTable(root));
+        return Arrays.copyOf(buffer.bytes, buffer.size);
+    }
+
+    static final class Table {
+        private final List<Field> fields = new ArrayList<>();
+
+        Table scalar(int slot, int width, long value) {
+            fields.add(new Field(slot, width, value, null));
+            return this;
+        }
+
+        Table table(int slot, Table table) {
+            fields.add(new Field(slot, 4, 0, table));
+            return this;
+        }
+
+        Table tables(int slot, Table... tables) {
+            fields.add(new Field(slot, 4, 0, tables));
+            return this;
+        }
+
+        // a vector of structs, given as their little-endian bytes
+        Table structs(int slot, int structSize, int alignment, byte[] structs) {
+            fields.add(new Field(slot, 4, 0, new Structs(structSize, alignment, structs)));
+            return this;
+        }
+
+        Table string(int slot, String value) {
+            fields.add(new Field(slot, 4, 0, value));
+            return this;
+        }
+    }
+
+    private static final class Field {
+        private final int slot;
+        private final int width;
+        private final long value;
+        private final Object reference;
+
+        Field(int slot, int width, long value, Object reference) {
+            this.slot = slot;
+            this.width = width;
+            this.value = value;
+            this.reference = reference;
+        }
+    }
+
+    private static final class Structs {
+        private final int size;
+        private final int alignment;
+        private final byte[] bytes;
+
+        Structs(int size, int alignment, byte[] bytes) {
+            this.size = size;
+            this.alignment = alignment;
+            this.bytes = bytes;
+        }
+    }
+
+    private int writeTable(Table table) {
+        // widest fields first, right after the soffset to the vtable
+        List<Field> fields = new ArrayList<>(table.fields);
+        fields.sort((a, b) -> b.width - a.width);
+
+        int slots = 0;
+        boolean anyLong = false;
+        for (Field field : fields) {
+            slots = Math.max(slots, field.slot + 1);
+            anyLong |= field.width == 8;
+        }
+
+        int[] fieldOffsets = new int[fields.size()];
+        int inline = 4;
+        for (int i = 0; i < fields.size(); i++) {
+            int width = fields.get(i).width;
+            inline = align(inline, width);
+            fieldOffsets[i] = inline;
+            inline += width;
+        }
+
+        // the vtable comes first; the table starts 4-aligned, and 8-byte fields (at 8, 16, ...) must land 8-aligned
+        int vtable = align(size, 2);
+        int vtableSize = 4 + 2 * slots;
+        int start = align(vtable + vtableSize, anyLong ? 8 : 4);
+
+        grow(start + inline - size);
+        putShort(vtable, vtableSize);
+        putShort(vtable + 2, inline);
+        for (int i = 0; i < fields.size(); i++)
+            putShort(vtable + 4 + 2 * fields.get(i).slot, fieldOffsets[i]);
+
+        putInt(start, start - vtable);
+        for (int i = 0; i < fields.size(); i++) {
+            Field field = fields.get(i);
+            if (field.reference == null)
+                putScalar(start + fieldOffsets[i], field.width, field.value);
+        }
+        size = start + inline;
+
+        for (int i = 0; i < fields.size(); i++) {
+            Field field = fields.get(i);
+            if (field.reference != null)
+                patchOffset(start + fieldOffsets[i], writeReference(field.reference));
+        }
+
+        return start;
+    }
+
+    private int writeReference(Object reference) {
+        if (reference instanceof Table)
+            return writeTable((Table) reference);
+        if (reference instanceof Table[])
+            return writeTables((Table[]) reference);
+        if (reference instanceof Structs)
+            return writeStructs((Structs) reference);
+        return writeString((String) reference);
+    }
+
+    private int writeTables(Table[] tables) {
+        int vector = align(size, 4);
+        grow(vector + 4 + 4 * tables.length - size);
+        putInt(vector, tables.length);
+        size = vector + 4 + 4 * tables.length;
+
+        for (int i = 0; i < tables.length; i++)
+            patchOffset(vector + 4 + 4 * i, writeTable(tables[i]));
+        return vector;
+    }
+
+    private int writeStructs(Structs structs) {
+        // the elements (right after the length) must be aligned
+        int vector = align(size + 4, Math.max(4, structs.alignment)) - 4;
+        grow(vector + 4 + structs.bytes.length - size);
+        putInt(vector, structs.bytes.length / structs.size);
+        System.arraycopy(structs.bytes, 0, bytes, vector + 4, structs.bytes.length);
+        size = vector + 4 + structs.bytes.length;
+        return vector;
+    }
+
+    private int writeString(String value) {
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        int string = align(size, 4);
+        grow(string + 4 + utf8.length + 1 - size);
+        putInt(string, utf8.length);
+        System.arraycopy(utf8, 0, bytes, string + 4, utf8.length);
+        size = string + 4 + utf8.length + 1;
+        return string;
+    }
+
+    private void patchOffset(int position, int target) {
+        putInt(position, target - position);
+    }
+
+    private void putScalar(int position, int width, long value) {
+        for (int i = 0; i < width; i++)
+            bytes[position + i] = (byte) (value >>> (8 * i));
+    }
+
+    private void putShort(int position, int value) {
+        putScalar(position, 2, value);
+    }
+
+    private void putInt(int position, int value) {
+        putScalar(position, 4, value);
+    }
+
+    private void grow(int extra) {
+        if (size + extra > bytes.length)
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+    }
+
+    private static int align(int position, int alignment) {
+        return (position + alignment - 1) / alignment * alignment;
+    }
+}
@@ -0,0 +1,77 @@
+package com.github.sergdelft.j2graph.walker.binary;
+
+import com.github.sergdelft.j2graph.walker.EdgeKind;
+
+/**
+ * Layout of the binary graph files written by {@link BinaryGraphWriter}
+ * and read by {@link BinaryGraphReader}.
+ * <p>
+ * Fixed-size integers are little-endian. Varints are unsigned LEB128
+ * (7 bits per byte, least significant group first); signed values are
+ * zigzag-encoded before being written as varints.
+ *
+ * <pre>
+ * file    := header graph* strings index footer
+ * header  := "J2GB" version:u8 flags:u8
+ * graph   := className:varint methodName:varint
+ *            nodeCount:varint kind:u8{nodeCount} label:varint{nodeCount}
+ *            [implicit:u8 [parent:varint{nodeCount}]]
+ *            edges{7}
+ * edges   := count:varint (fromDelta:varint zigzag(to - from):varint){count}
+ * strings := count:i32 offset:i32{count + 1} utf8 bytes
+ * index   := graphOffset:i64{graphCount}
+ * footer  := stringsOffset:i64 indexOffset:i64 graphCount:i32 "J2GB"
+ * </pre>
+ * <p>
+ * Class names, method names and node labels are ids in the string table of the file.
+ * Node ids are the dense, per-method ids of {@link com.github.sergdelft.j2graph.walker.BufferingWalker}.
+ * The node kinds are the values of {@link com.github.sergdelft.j2graph.walker.NodeKind}.
+ * There is one edge block per {@link com.github.sergdelft.j2graph.walker.EdgeKind}, in the order
+ * of their values. Inside a block, edges are sorted by (from, to), and each 'from' is stored as
+ * the difference to the previous one, starting at 0. String offsets are relative to the first
+ * byte of the UTF-8 data; graph offsets are absolute.
+ * <p>
+ * A file is read through a single mapping, so it holds at most {@link #MAX_FILE_SIZE}
+ * (2^31 - 1) bytes, and all offsets fit in an i32 (even those stored as i64). Writers
+ * refuse to go over it; larger corpora go to a sharded store (see {@link GraphStoreWriter}).
+ * <p>
+ * The implicit byte and the parents are only there when the {@link #FLAG_IMPLICIT_EDGES}
+ * flag is set. Bit {@code 1 << kind} of the implicit byte tells that the block of that kind
+ * is empty, as its edges are derived instead:
+ * <ul>
+ *     <li>NEXT_TOKEN: one edge between every two consecutive token nodes, in the order of their ids</li>
+ *     <li>CHILD: one edge from the parent of every node that has one, where the parent is 0 for
+ *     no parent, and otherwise zigzag(parent - previous parent) + 1, starting at 0</li>
+ * </ul>
+ * Derived edges are listed sorted by (from, to), as explicit ones are.
+ */
+public final class BinaryGraphFormat {
+
+    public static final int MAGIC = 0x4247324A; // "J2GB", little-endian
+    public static final int VERSION = 1;
+
+    // a file is mapped as a whole, and mappings are limited to 2 GB
+    public static final long MAX_FILE_SIZE = Integer.MAX_VALUE;
+
+    static final int HEADER_SIZE = 6;
+    static final int FOOTER_SIZE = 24;
+    static final int EDGE_KINDS = 7;
+
+    // header flags
+    public static final int FLAG_IMPLICIT_EDGES = 1;
+
+    // edge kinds that can be implicit
+    static final int NEXT_TOKEN = EdgeKind.NEXT_TOKEN.getValue();
+    static final int CHILD = EdgeKind.CHILD.getValue();
+
+    private BinaryGraphFormat() {
+    }
+
+    static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,305 @@
+package com.github.sergdelft.j2graph.walker.binary;
+
+import com.github.sergdelft.j2graph.walker.EdgeKind;
+import com.github.sergdelft.j2graph.walker.NodeKind;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static com.github.sergdelft.j2graph.walker.binary.BinaryGraphFormat.*;
+
+/**
+ * Reads the files written by {@link BinaryGraphWriter}.
+ * <p>
+ * Nothing is copied out of the buffer up front: graphs are views that decode
+ * their nodes and edges from the buffer when they are iterated, and strings are
+ * only decoded when asked for. Reads use absolute positions, so a reader (and its
+ * views) can be shared by many threads.
+ * <p>
+ * Implicit NEXT_TOKEN and CHILD edges are derived again while iterating the edges,
+ * so consumers see the same edges, in the same order, as in files without them.
+ */
+public class BinaryGraphReader {
+
+    private static final NodeKind[] NODE_KINDS = NodeKind.values();
+    private static final EdgeKind[] EDGE_KIND_VALUES = EdgeKind.values();
+
+    private final ByteBuffer buffer;
+    private final int stringCount;
+    private final int stringOffsets;
+    private final int stringData;
+    private final int index;
+    private final int graphCount;
+    private final boolean implicitEdges;
+
+    public BinaryGraphReader(ByteBuffer buffer) {
+        this.buffer = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+
+        int limit = this.buffer.limit();
+        if (limit < HEADER_SIZE + FOOTER_SIZE
+                || this.buffer.getInt(0) != MAGIC
+                || this.buffer.getInt(limit - 4) != MAGIC)
+            throw new IllegalArgumentException("not a binary graph file");
+        if (this.buffer.get(4) != VERSION)
+            throw new IllegalArgumentException("unsupported binary graph version: " + this.buffer.get(4));
+        this.implicitEdges = (this.buffer.get(5) & FLAG_IMPLICIT_EDGES) != 0;
+
+        int footer = limit - FOOTER_SIZE;
+        // offsets fit in an int, as files are at most MAX_FILE_SIZE bytes
+        int strings = Math.toIntExact(this.buffer.getLong(footer));
+        this.index = Math.toIntExact(this.buffer.getLong(footer + 8));
+        this.graphCount = this.buffer.getInt(footer + 16);
+
+        this.stringCount = this.buffer.getInt(strings);
+        this.stringOffsets = strings + 4;
+        this.stringData = stringOffsets + 4 * (stringCount + 1);
+    }
+
+    public static BinaryGraphReader open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > MAX_FILE_SIZE)
+                throw new IllegalArgumentException("binary graph files hold at most " + MAX_FILE_SIZE + " bytes: " + file);
+
+            return new BinaryGraphReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public int getGraphCount() {
+        return graphCount;
+    }
+
+    public GraphView graph(int graph) {
+        if (graph < 0 || graph >= graphCount)
+            throw new IndexOutOfBoundsException("graph " + graph + " of " + graphCount);
+
+        return new GraphView(Math.toIntExact(buffer.getLong(index + 8 * graph)));
+    }
+
+    public int getStringCount() {
+        return stringCount;
+    }
+
+    public String string(int id) {
+        int start = buffer.getInt(stringOffsets + 4 * id);
+        int end = buffer.getInt(stringOffsets + 4 * (id + 1));
+
+        byte[] bytes = new byte[end - start];
+        buffer.duplicate().position(stringData + start).get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // decodes the varint at 'position' into value, and moves position past it
+    private static final class Cursor {
+        private final ByteBuffer buffer;
+        int position;
+
+        Cursor(ByteBuffer buffer, int position) {
+            this.buffer = buffer;
+            this.position = position;
+        }
+
+        int next() {
+            int result = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = buffer.get(position++);
+                result |= (b & 0x7F) << shift;
+                if (b >= 0)
+                    break;
+            }
+            return result;
+        }
+    }
+
+    @FunctionalInterface
+    public interface NodeConsumer {
+        void node(int id, NodeKind kind, int label);
+    }
+
+    @FunctionalInterface
+    public interface EdgeConsumer {
+        void edge(int from, int to, EdgeKind kind);
+    }
+
+    /**
+     * A method graph, decoded from the buffer on demand.
+     */
+    public final class GraphView {
+        private final int className;
+        private final int methodName;
+        private final int nodeCount;
+        private final int kinds;
+        private final int labels;
+        private int implicitKinds;
+        private int parents = -1;
+        // written last, so that threads that see it also see the fields above
+        private volatile int edges = -1;
+
+        private GraphView(int offset) {
+            Cursor cursor = new Cursor(buffer, offset);
+            this.className = cursor.next();
+            this.methodName = cursor.next();
+            this.nodeCount = cursor.next();
+            this.kinds = cursor.position;
+            this.labels = kinds + nodeCount;
+        }
+
+        public String getClassName() {
+            return string(className);
+        }
+
+        public String getMethodName() {
+            return string(methodName);
+        }
+
+        // decodes a label (or any other string) of this graph's file
+        public String string(int id) {
+            return BinaryGraphReader.this.string(id);
+        }
+
+        public int getNodeCount() {
+            return nodeCount;
+        }
+
+        public NodeKind nodeKind(int node) {
+            return NODE_KINDS[buffer.get(kinds + node)];
+        }
+
+        public void nodes(NodeConsumer consumer) {
+            Cursor cursor = new Cursor(buffer, labels);
+            for (int node = 0; node < nodeCount; node++)
+                consumer.node(node, nodeKind(node), cursor.next());
+
+            locateEdges(cursor.position);
+        }
+
+        public int getEdgeCount() {
+            Cursor cursor = new Cursor(buffer, edgesOffset());
+            int count = 0;
+            for (int kind = 0; kind < EDGE_KINDS; kind++) {
+                int edgesOfKind = cursor.next();
+                count += edgesOfKind;
+                for (int i = 0; i < 2 * edgesOfKind; i++)
+                    cursor.next();
+            }
+
+            if (isImplicit(NEXT_TOKEN)) {
+                int tokens = 0;
+                for (int node = 0; node < nodeCount; node++) {
+                    if (nodeKind(node) == NodeKind.TOKEN)
+                        tokens++;
+                }
+                count += Math.max(tokens - 1, 0);
+            }
+            if (isImplicit(CHILD)) {
+                Cursor parent = new Cursor(buffer, parents);
+                for (int node = 0; node < nodeCount; node++) {
+                    if (parent.next() != 0)
+                        count++;
+                }
+            }
+            return count;
+        }
+
+        public void edges(EdgeConsumer consumer) {
+            Cursor cursor = new Cursor(buffer, edgesOffset());
+            for (int kind = 0; kind < EDGE_KINDS; kind++) {
+                if (kind == NEXT_TOKEN && isImplicit(NEXT_TOKEN))
+                    nextTokenEdges(consumer);
+                if (kind == CHILD && isImplicit(CHILD))
+                    childEdges(consumer);
+
+                int edgesOfKind = cursor.next();
+                int from = 0;
+                for (int i = 0; i < edgesOfKind; i++) {
+                    from += cursor.next();
+                    int to = from + unzigzag(cursor.next());
+                    consumer.edge(from, to, EDGE_KIND_VALUES[kind]);
+                }
+            }
+        }
+
+        private void nextTokenEdges(EdgeConsumer consumer) {
+            int previousToken = -1;
+            for (int node = 0; node < nodeCount; node++) {
+                if (nodeKind(node) != NodeKind.TOKEN)
+                    continue;
+
+                if (previousToken >= 0)
+                    consumer.edge(previousToken, node, EDGE_KIND_VALUES[NEXT_TOKEN]);
+                previousToken = node;
+            }
+        }
+
+        // decodes the parents, and lists the children of each parent in order (a counting sort)
+        private void childEdges(EdgeConsumer consumer) {
+            int[] parentOf = new int[nodeCount];
+            int[] firstChild = new int[nodeCount + 1];
+
+            Cursor cursor = new Cursor(buffer, parents);
+            int previousParent = 0;
+            for (int node = 0; node < nodeCount; node++) {
+                int value = cursor.next();
+                if (value == 0) {
+                    parentOf[node] = -1;
+                } else {
+                    previousParent += unzigzag(value - 1);
+                    parentOf[node] = previousParent;
+                    firstChild[previousParent + 1]++;
+                }
+            }
+
+            for (int parent = 0; parent < nodeCount; parent++)
+                firstChild[parent + 1] += firstChild[parent];
+
+            int[] children = new int[firstChild[nodeCount]];
+            int[] next = Arrays.copyOf(firstChild, nodeCount);
+            for (int node = 0; node < nodeCount; node++) {
+                if (parentOf[node] >= 0)
+                    children[next[parentOf[node]]++] = node;
+            }
+
+            for (int parent = 0; parent < nodeCount; parent++) {
+                for (int child = firstChild[parent]; child < firstChild[parent + 1]; child++)
+                    consumer.edge(parent, children[child], EDGE_KIND_VALUES[CHILD]);
+            }
+        }
+
+        private boolean isImplicit(int kind) {
+            edgesOffset();
+            return (implicitKinds & (1 << kind)) != 0;
+        }
+
+        // finds the implicit section (if any) and the edge blocks, which come after the labels
+        private void locateEdges(int afterLabels) {
+            if (edges >= 0)
+                return;
+
+            Cursor cursor = new Cursor(buffer, afterLabels);
+            if (implicitEdges) {
+                implicitKinds = buffer.get(cursor.position++);
+                if ((implicitKinds & (1 << CHILD)) != 0) {
+                    parents = cursor.position;
+                    for (int node = 0; node < nodeCount; node++)
+                        cursor.next();
+                }
+            }
+            edges = cursor.position;
+        }
+
+        private int edgesOffset() {
+            if (edges < 0) {
+                Cursor cursor = new Cursor(buffer, labels);
+                for (int node = 0; node < nodeCount; node++)
+                    cursor.next();
+                locateEdges(cursor.position);
+            }
+            return edges;
+        }
+    }
+}
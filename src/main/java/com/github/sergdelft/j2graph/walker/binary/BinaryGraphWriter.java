@@ -0,0 +1,307 @@
+package com.github.sergdelft.j2graph.walker.binary;
+
+import com.github.sergdelft.j2graph.graph.NonTerminal;
+import com.github.sergdelft.j2graph.walker.BufferingWalker;
+import com.github.sergdelft.j2graph.walker.NodeKind;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.github.sergdelft.j2graph.walker.binary.BinaryGraphFormat.*;
+
+/**
+ * Writes one graph per method in the format described in {@link BinaryGraphFormat}.
+ * <p>
+ * The string table and the graph index are only known at the end,
+ * so the file is complete only after {@link #close()}. Subclasses that
+ * write many files (e.g., {@link GraphStoreWriter}) open and finish them
+ * with {@link #open(OutputStream)} and {@link #finish()}.
+ * <p>
+ * With implicit edges, NEXT_TOKEN and CHILD edges are left out of the edge blocks
+ * whenever they can be derived from the token order and from a parent array,
+ * which shrinks the graphs by about half (see {@link BinaryGraphFormat}).
+ * <p>
+ * A file cannot grow over {@link BinaryGraphFormat#MAX_FILE_SIZE}: the graph that would
+ * take it (with its string table, index and footer) over the limit is refused, and the
+ * file stays as it was before it.
+ */
+public class BinaryGraphWriter extends BufferingWalker implements Closeable {
+
+    // node ids must fit next to the edge kind in the sort key of an edge
+    private static final int MAX_NODES = 1 << 28;
+
+    private final boolean implicitEdges;
+    private CountingOutput out;
+    // the graph being written, until it is known to fit in the file
+    private final ByteArrayOutputStream graphBytes = new ByteArrayOutputStream();
+    private final CountingOutput graphOut = new CountingOutput(graphBytes);
+    // lower in tests
+    long maxFileSize = MAX_FILE_SIZE;
+
+    private final Map<String, Integer> stringIds = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+    // UTF-8 bytes of the strings so far
+    private long stringBytes = 0;
+    private long[] graphOffsets = new long[1024];
+    private int graphCount = 0;
+
+    private long[] sortedEdges = new long[256];
+    private final int[] edgesPerKind = new int[EDGE_KINDS];
+    private int[] parents = new int[256];
+
+    public BinaryGraphWriter(OutputStream out) {
+        this(out, false);
+    }
+
+    /**
+     * @param implicitEdges whether to leave out the NEXT_TOKEN and CHILD edges that can be derived
+     */
+    public BinaryGraphWriter(OutputStream out, boolean implicitEdges) {
+        this(implicitEdges);
+        open(out);
+    }
+
+    protected BinaryGraphWriter(boolean implicitEdges) {
+        this.implicitEdges = implicitEdges;
+    }
+
+    protected void open(OutputStream out) {
+        this.out = new CountingOutput(out);
+        this.stringIds.clear();
+        this.strings.clear();
+        this.stringBytes = 0;
+        this.graphCount = 0;
+
+        try {
+            this.out.writeInt(MAGIC);
+            this.out.writeByte(VERSION);
+            this.out.writeByte(implicitEdges ? FLAG_IMPLICIT_EDGES : 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    protected boolean isOpen() {
+        return out != null;
+    }
+
+    // bytes written to the current file so far
+    protected long position() {
+        return out.position();
+    }
+
+    // size of the current file if it were finished now
+    protected long finishedSize() {
+        return out.position() + 4 + 4L * (strings.size() + 1) + stringBytes + 8L * graphCount + FOOTER_SIZE;
+    }
+
+    @Override
+    protected void writeMethod(String methodName, NonTerminal root) {
+        if (nodeCount() >= MAX_NODES)
+            throw new IllegalStateException("method has too many nodes for the binary format: " + methodName);
+
+        int stringCount = strings.size();
+        long stringByteCount = stringBytes;
+        graphBytes.reset();
+        try {
+            graphOut.writeVarInt(stringId(getClassName()));
+            graphOut.writeVarInt(stringId(methodName));
+
+            graphOut.writeVarInt(nodeCount());
+            for (int id = 0; id < nodeCount(); id++)
+                graphOut.writeByte(nodeKind(id).getValue());
+            for (int id = 0; id < nodeCount(); id++)
+                graphOut.writeVarInt(stringId(label(id)));
+
+            writeEdges();
+
+            // the graph, its new strings and its index entry
+            if (finishedSize() + graphBytes.size() + 8 > maxFileSize) {
+                forgetStrings(stringCount, stringByteCount);
+                throw new IllegalStateException("the binary graph file would be larger than " + maxFileSize
+                        + " bytes with method " + methodName + "; write a sharded store instead");
+            }
+
+            if (graphCount == graphOffsets.length)
+                graphOffsets = Arrays.copyOf(graphOffsets, graphCount * 2);
+            graphOffsets[graphCount++] = out.position();
+            out.writeBytes(graphBytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            graphBytes.reset();
+        }
+    }
+
+    // drops the strings added since there were the given number of them
+    private void forgetStrings(int stringCount, long stringByteCount) {
+        for (String string : strings.subList(stringCount, strings.size()))
+            stringIds.remove(string);
+        strings.subList(stringCount, strings.size()).clear();
+        stringBytes = stringByteCount;
+    }
+
+    private void writeEdges() throws IOException {
+        // sort by (kind, from, to), so that each kind is a block of increasing 'from's
+        int edges = edgeCount();
+        if (sortedEdges.length < edges)
+            sortedEdges = new long[Math.max(edges, sortedEdges.length * 2)];
+
+        Arrays.fill(edgesPerKind, 0);
+        for (int edge = 0; edge < edges; edge++) {
+            int kind = edgeKind(edge).getValue();
+            edgesPerKind[kind]++;
+            sortedEdges[edge] = ((long) kind << 56) | ((long) edgeFrom(edge) << 28) | edgeTo(edge);
+        }
+        Arrays.sort(sortedEdges, 0, edges);
+
+        int implicitKinds = 0;
+        if (implicitEdges) {
+            if (isTokenChain(edgesPerKind[NEXT_TOKEN]))
+                implicitKinds |= 1 << NEXT_TOKEN;
+            if (isForest(edgesPerKind[NEXT_TOKEN], edgesPerKind[CHILD]))
+                implicitKinds |= 1 << CHILD;
+
+            graphOut.writeByte(implicitKinds);
+            if ((implicitKinds & (1 << CHILD)) != 0)
+                writeParents();
+        }
+
+        int edge = 0;
+        for (int kind = 0; kind < EDGE_KINDS; kind++) {
+            if ((implicitKinds & (1 << kind)) != 0) {
+                graphOut.writeVarInt(0);
+                edge += edgesPerKind[kind];
+                continue;
+            }
+
+            graphOut.writeVarInt(edgesPerKind[kind]);
+
+            int previousFrom = 0;
+            for (int i = 0; i < edgesPerKind[kind]; i++, edge++) {
+                int from = from(edge);
+                int to = to(edge);
+
+                graphOut.writeVarInt(from - previousFrom);
+                graphOut.writeVarInt(zigzag(to - from));
+                previousFrom = from;
+            }
+        }
+    }
+
+    // whether the NEXT_TOKEN edges (the first block) link exactly all tokens, in the order of their ids
+    private boolean isTokenChain(int nextTokenEdges) {
+        int edge = 0;
+        int previousToken = -1;
+        for (int id = 0; id < nodeCount(); id++) {
+            if (nodeKind(id) != NodeKind.TOKEN)
+                continue;
+
+            if (previousToken >= 0) {
+                if (edge == nextTokenEdges || from(edge) != previousToken || to(edge) != id)
+                    return false;
+                edge++;
+            }
+            previousToken = id;
+        }
+        return edge == nextTokenEdges;
+    }
+
+    // whether no node has more than one parent (and no CHILD edge is repeated), filling in the parents
+    private boolean isForest(int firstChildEdge, int childEdges) {
+        if (parents.length < nodeCount())
+            parents = new int[Math.max(nodeCount(), parents.length * 2)];
+        Arrays.fill(parents, 0, nodeCount(), -1);
+
+        for (int edge = firstChildEdge; edge < firstChildEdge + childEdges; edge++) {
+            int child = to(edge);
+            if (parents[child] >= 0)
+                return false;
+            parents[child] = from(edge);
+        }
+        return true;
+    }
+
+    // 0 for no parent, or the difference to the previous parent, zigzag-encoded and plus one
+    private void writeParents() throws IOException {
+        int previousParent = 0;
+        for (int id = 0; id < nodeCount(); id++) {
+            if (parents[id] < 0) {
+                graphOut.writeVarInt(0);
+            } else {
+                graphOut.writeVarInt(zigzag(parents[id] - previousParent) + 1);
+                previousParent = parents[id];
+            }
+        }
+    }
+
+    private int from(int sortedEdge) {
+        return (int) (sortedEdges[sortedEdge] >>> 28) & (MAX_NODES - 1);
+    }
+
+    private int to(int sortedEdge) {
+        return (int) sortedEdges[sortedEdge] & (MAX_NODES - 1);
+    }
+
+    private int stringId(String value) {
+        Integer id = stringIds.get(value);
+        if (id == null) {
+            id = strings.size();
+            stringIds.put(value, id);
+            strings.add(value);
+            stringBytes += value.getBytes(StandardCharsets.UTF_8).length;
+        }
+        return id;
+    }
+
+    public int getGraphCount() {
+        return graphCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (isOpen())
+            finish();
+    }
+
+    protected void finish() throws IOException {
+        long stringsOffset = out.position();
+        writeStrings();
+
+        long indexOffset = out.position();
+        for (int graph = 0; graph < graphCount; graph++)
+            out.writeLong(graphOffsets[graph]);
+
+        out.writeLong(stringsOffset);
+        out.writeLong(indexOffset);
+        out.writeInt(graphCount);
+        out.writeInt(MAGIC);
+        out.close();
+        out = null;
+    }
+
+    private void writeStrings() throws IOException {
+        byte[][] encoded = new byte[strings.size()][];
+        for (int i = 0; i < encoded.length; i++)
+            encoded[i] = strings.get(i).getBytes(StandardCharsets.UTF_8);
+
+        out.writeInt(encoded.length);
+        int offset = 0;
+        out.writeInt(offset);
+        for (byte[] bytes : encoded) {
+            offset += bytes.length;
+            out.writeInt(offset);
+        }
+        for (byte[] bytes : encoded)
+            out.writeBytes(bytes);
+    }
+}
@@ -0,0 +1,64 @@
+package com.github.sergdelft.j2graph.walker.binary;
+
+import java.io.*;
+
+/**
+ * Buffered output that knows how many bytes went through it,
+ * so that writers can record offsets.
+ */
+class CountingOutput implements Closeable {
+
+    private final OutputStream out;
+    private long position = 0;
+
+    CountingOutput(OutputStream out) {
+        this.out = out instanceof BufferedOutputStream || out instanceof ByteArrayOutputStream
+                ? out : new BufferedOutputStream(out, 1 << 16);
+    }
+
+    long position() {
+        return position;
+    }
+
+    void writeByte(int value) throws IOException {
+        out.write(value);
+        position++;
+    }
+
+    void writeVarInt(int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        writeByte(value);
+    }
+
+    void writeInt(int value) throws IOException {
+        for (int i = 0; i < 4; i++)
+            writeByte(value >>> (8 * i));
+    }
+
+    void writeLong(long value) throws IOException {
+        for (int i = 0; i < 8; i++)
+            writeByte((int) (value >>> (8 * i)));
+    }
+
+    void writeBytes(byte[] bytes) throws IOException {
+        out.write(bytes);
+        position += bytes.length;
+    }
+
+    void writeBytes(ByteArrayOutputStream bytes) throws IOException {
+        bytes.writeTo(out);
+        position += bytes.size();
+    }
+
+    void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
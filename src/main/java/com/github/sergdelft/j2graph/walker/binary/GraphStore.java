@@ -0,0 +1,116 @@
+package com.github.sergdelft.j2graph.walker.binary;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.OptionalLong;
+
+import static com.github.sergdelft.j2graph.walker.binary.GraphStoreFormat.*;
+
+/**
+ * Random access to the graphs of a store written by {@link GraphStoreWriter}.
+ * <p>
+ * Shards are memory-mapped, so fetching a graph (by ordinal or by source path
+ * and method name) touches only the pages it needs. A lookup by name probes the
+ * one hash table of the store, whatever the number of shards, without scanning
+ * any graphs. The names file is mapped in windows, as it can be larger than 2 GB.
+ */
+public class GraphStore {
+
+    private final BinaryGraphReader[] shards;
+    private final WindowedMapping names;
+    private final long nameSlots;
+    private final int nameCapacity;
+    private final long[] firstOrdinals;
+    private final long graphCount;
+
+    private GraphStore(BinaryGraphReader[] shards, WindowedMapping names, long[] firstOrdinals, long graphCount) {
+        this.shards = shards;
+        this.names = names;
+        this.nameSlots = names.getLong(names.size() - NAMES_FOOTER_SIZE);
+        this.nameCapacity = names.getInt(names.size() - NAMES_FOOTER_SIZE + 8);
+        this.firstOrdinals = firstOrdinals;
+        this.graphCount = graphCount;
+    }
+
+    public static GraphStore open(Path directory) throws IOException {
+        ByteBuffer index = map(directory.resolve(INDEX_FILE));
+        if (index.getInt(0) != STORE_MAGIC)
+            throw new IllegalArgumentException("not a graph store: " + directory);
+
+        int shardCount = index.getInt(4);
+        BinaryGraphReader[] shards = new BinaryGraphReader[shardCount];
+        long[] firstOrdinals = new long[shardCount];
+
+        long ordinal = 0;
+        for (int shard = 0; shard < shardCount; shard++) {
+            firstOrdinals[shard] = ordinal;
+            ordinal += index.getInt(8 + 4 * shard);
+
+            shards[shard] = new BinaryGraphReader(map(directory.resolve(graphsFile(shard))));
+        }
+
+        WindowedMapping names = WindowedMapping.map(directory.resolve(NAMES_FILE));
+        if (names.size() < NAMES_FOOTER_SIZE || names.getInt(names.size() - 4) != NAMES_MAGIC)
+            throw new IllegalArgumentException("not a names file: " + NAMES_FILE);
+
+        return new GraphStore(shards, names, firstOrdinals, ordinal);
+    }
+
+    public long getGraphCount() {
+        return graphCount;
+    }
+
+    public BinaryGraphReader.GraphView graph(long ordinal) {
+        if (ordinal < 0 || ordinal >= graphCount)
+            throw new IndexOutOfBoundsException("graph " + ordinal + " of " + graphCount);
+
+        int shard = Arrays.binarySearch(firstOrdinals, ordinal);
+        if (shard < 0)
+            shard = -shard - 2;
+
+        return shards[shard].graph((int) (ordinal - firstOrdinals[shard]));
+    }
+
+    public Optional<BinaryGraphReader.GraphView> graph(Path source, String methodName) {
+        OptionalLong ordinal = ordinal(source, methodName);
+        return ordinal.isPresent() ? Optional.of(graph(ordinal.getAsLong())) : Optional.empty();
+    }
+
+    public OptionalLong ordinal(Path source, String methodName) {
+        byte[] key = key(source, methodName);
+        long hash = hash(key);
+
+        for (int slot = (int) hash & (nameCapacity - 1); ; slot = (slot + 1) & (nameCapacity - 1)) {
+            long position = nameSlots + (long) SLOT_SIZE * slot;
+            long entry = names.getLong(position + 8);
+            if (entry == -1)
+                return OptionalLong.empty();
+
+            if (names.getLong(position) == hash && sameKey(entry, key))
+                return OptionalLong.of(names.getLong(entry));
+        }
+    }
+
+    private boolean sameKey(long entry, byte[] key) {
+        if (names.getInt(entry + 8) != key.length)
+            return false;
+
+        for (int i = 0; i < key.length; i++) {
+            if (names.get(entry + 12 + i) != key[i])
+                return false;
+        }
+        return true;
+    }
+
+    private static ByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+}
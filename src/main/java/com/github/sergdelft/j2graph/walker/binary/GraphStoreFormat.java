@@ -0,0 +1,62 @@
+package com.github.sergdelft.j2graph.walker.binary;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * Layout of the sharded graph stores written by {@link GraphStoreWriter}
+ * and read by {@link GraphStore}.
+ * <p>
+ * A store is a directory with:
+ * <pre>
+ * store.index         := "J2GS" shardCount:i32 graphCount:i32{shardCount}
+ * store.names         := entry* slot{capacity} slotsOffset:i64 capacity:i32 count:i32 "J2GN"
+ * shard-NNNNN.graphs  := a binary graph file, see {@link BinaryGraphFormat}
+ * entry               := ordinal:i64 keyLength:i32 key:utf8
+ * slot                := hash:i64 entryOffset:i64
+ * </pre>
+ * <p>
+ * Graphs are numbered (ordinals) across shards, in the order they were written.
+ * The names file is one open-addressing hash table (linear probing, power-of-two
+ * capacity) for the whole store, from the key of every graph to the entry with
+ * its ordinal, so that a lookup probes one table whatever the number of shards.
+ * It can be larger than 2 GB (all its offsets are i64); it holds at most
+ * {@link #MAX_NAMES} graphs. The key is the source path and the qualified method name
+ * (see {@link com.github.sergdelft.j2graph.ast.JDTUtils}), separated by a '\0';
+ * the hash is the 64-bit FNV-1a of the UTF-8 key. Empty slots have entryOffset -1.
+ * All integers are little-endian.
+ */
+public final class GraphStoreFormat {
+
+    public static final int STORE_MAGIC = 0x5347324A; // "J2GS", little-endian
+    public static final int NAMES_MAGIC = 0x4E47324A; // "J2GN", little-endian
+
+    // the hash table keeps at least half of its slots empty, in at most 2^30 slots
+    public static final int MAX_NAMES = 1 << 29;
+
+    static final String INDEX_FILE = "store.index";
+    static final String NAMES_FILE = "store.names";
+    static final int NAMES_FOOTER_SIZE = 20;
+    static final int SLOT_SIZE = 16;
+
+    private GraphStoreFormat() {
+    }
+
+    static String graphsFile(int shard) {
+        return String.format("shard-%05d.graphs", shard);
+    }
+
+    static byte[] key(Path source, String methodName) {
+        String path = source == null ? "" : source.toString();
+        return (path + '\0' + methodName).getBytes(StandardCharsets.UTF_8);
+    }
+
+    static long hash(byte[] key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key) {
+            hash ^= (b & 0xFF);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
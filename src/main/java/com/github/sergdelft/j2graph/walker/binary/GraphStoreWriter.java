@@ -0,0 +1,153 @@
+package com.github.sergdelft.j2graph.walker.binary;
+
+import com.github.sergdelft.j2graph.graph.NonTerminal;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static com.github.sergdelft.j2graph.walker.binary.GraphStoreFormat.*;
+
+/**
+ * Writes a sharded graph store, as described in {@link GraphStoreFormat}.
+ * <p>
+ * Graphs go to the current shard until it reaches the shard size, and then a new
+ * shard is started (a shard may go over the size by its last graph, its string
+ * table and its indexes). The source path of the graphs is the one of the last
+ * {@link #beginFile(Path)}. The names of all graphs go to one file, whose hash table
+ * is written on {@link #close()}.
+ */
+public class GraphStoreWriter extends BinaryGraphWriter {
+
+    // shards are mapped as a whole, and mappings are limited to 2 GB
+    public static final long MAX_SHARD_SIZE = 1L << 30;
+
+    private final Path directory;
+    private final long shardSize;
+
+    private Path source;
+    private int shard = -1;
+    private int[] graphsPerShard = new int[16];
+    private long ordinal = 0;
+
+    private final CountingOutput names;
+    private long[] nameHashes = new long[1024];
+    private long[] nameEntries = new long[1024];
+
+    public GraphStoreWriter(Path directory, long shardSize) throws IOException {
+        this(directory, shardSize, false);
+    }
+
+    /**
+     * @param implicitEdges whether to leave out the NEXT_TOKEN and CHILD edges that can be derived
+     */
+    public GraphStoreWriter(Path directory, long shardSize, boolean implicitEdges) throws IOException {
+        super(implicitEdges);
+
+        if (shardSize < 1 || shardSize > MAX_SHARD_SIZE)
+            throw new IllegalArgumentException("shard size must be between 1 and " + MAX_SHARD_SIZE + ": " + shardSize);
+
+        this.directory = Files.createDirectories(directory);
+        this.shardSize = shardSize;
+        this.names = new CountingOutput(Files.newOutputStream(directory.resolve(NAMES_FILE)));
+    }
+
+    @Override
+    public void beginFile(Path file) {
+        this.source = file;
+    }
+
+    @Override
+    protected void writeMethod(String methodName, NonTerminal root) {
+        try {
+            if (ordinal == MAX_NAMES)
+                throw new IllegalStateException("a graph store holds at most " + MAX_NAMES + " graphs");
+            if (!isOpen())
+                openShard();
+
+            super.writeMethod(methodName, root);
+            addName(methodName);
+            graphsPerShard[shard]++;
+            ordinal++;
+
+            if (position() >= shardSize)
+                finish();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public long getOrdinalCount() {
+        return ordinal;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (isOpen())
+            finish();
+        writeNameSlots();
+
+        try (CountingOutput index = new CountingOutput(Files.newOutputStream(directory.resolve(INDEX_FILE)))) {
+            index.writeInt(STORE_MAGIC);
+            index.writeInt(shard + 1);
+            for (int i = 0; i <= shard; i++)
+                index.writeInt(graphsPerShard[i]);
+        }
+    }
+
+    private void openShard() throws IOException {
+        shard++;
+        if (shard == graphsPerShard.length)
+            graphsPerShard = Arrays.copyOf(graphsPerShard, shard * 2);
+
+        OutputStream graphs = Files.newOutputStream(directory.resolve(graphsFile(shard)));
+        open(graphs);
+    }
+
+    private void addName(String methodName) throws IOException {
+        int graph = (int) ordinal;
+        if (graph == nameHashes.length) {
+            nameHashes = Arrays.copyOf(nameHashes, graph * 2);
+            nameEntries = Arrays.copyOf(nameEntries, graph * 2);
+        }
+
+        byte[] key = key(source, methodName);
+        nameHashes[graph] = hash(key);
+        nameEntries[graph] = names.position();
+
+        names.writeLong(ordinal);
+        names.writeInt(key.length);
+        names.writeBytes(key);
+    }
+
+    private void writeNameSlots() throws IOException {
+        int count = (int) ordinal;
+        int capacity = Integer.highestOneBit(Math.max(2, count * 2 - 1)) << 1;
+        long[] slotHashes = new long[capacity];
+        long[] slotEntries = new long[capacity];
+        Arrays.fill(slotEntries, -1);
+
+        for (int graph = 0; graph < count; graph++) {
+            int slot = (int) nameHashes[graph] & (capacity - 1);
+            while (slotEntries[slot] != -1)
+                slot = (slot + 1) & (capacity - 1);
+
+            slotHashes[slot] = nameHashes[graph];
+            slotEntries[slot] = nameEntries[graph];
+        }
+
+        long slotsOffset = names.position();
+        for (int slot = 0; slot < capacity; slot++) {
+            names.writeLong(slotHashes[slot]);
+            names.writeLong(slotEntries[slot]);
+        }
+        names.writeLong(slotsOffset);
+        names.writeInt(capacity);
+        names.writeInt(count);
+        names.writeInt(NAMES_MAGIC);
+        names.close();
+    }
+}
@@ -0,0 +1,66 @@
+package com.github.sergdelft.j2graph.walker.binary;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A read-only, little-endian file mapped in windows, so that it can be larger than
+ * a single mapping (2 GB). Windows overlap by 8 bytes, so that every int and long
+ * is read from one window.
+ */
+final class WindowedMapping {
+
+    // 1 GB windows
+    static final int WINDOW_BITS = 30;
+    private static final int OVERLAP = 8;
+
+    private final ByteBuffer[] windows;
+    private final int windowBits;
+    private final long mask;
+    private final long size;
+
+    private WindowedMapping(ByteBuffer[] windows, int windowBits, long size) {
+        this.windows = windows;
+        this.windowBits = windowBits;
+        this.mask = (1L << windowBits) - 1;
+        this.size = size;
+    }
+
+    static WindowedMapping map(Path file) throws IOException {
+        return map(file, WINDOW_BITS);
+    }
+
+    static WindowedMapping map(Path file, int windowBits) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long window = 1L << windowBits;
+            ByteBuffer[] windows = new ByteBuffer[(int) Math.max(1, (size + window - 1) >>> windowBits)];
+            for (int i = 0; i < windows.length; i++) {
+                long start = i * window;
+                long length = Math.min(size - start, window + OVERLAP);
+                windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, length).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            return new WindowedMapping(windows, windowBits, size);
+        }
+    }
+
+    long size() {
+        return size;
+    }
+
+    byte get(long position) {
+        return windows[(int) (position >>> windowBits)].get((int) (position & mask));
+    }
+
+    int getInt(long position) {
+        return windows[(int) (position >>> windowBits)].getInt((int) (position & mask));
+    }
+
+    long getLong(long position) {
+        return windows[(int) (position >>> windowBits)].getLong((int) (position & mask));
+    }
+}
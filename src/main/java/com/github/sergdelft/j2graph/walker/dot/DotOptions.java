@@ -0,0 +1,69 @@
+package com.github.sergdelft.j2graph.walker.dot;
+
+import com.github.sergdelft.j2graph.walker.EdgeKind;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Options to keep the dot output of large classes renderable.
+ * <p>
+ * By default, the whole class is a single digraph with all nodes and edges,
+ * as it always was.
+ */
+public class DotOptions {
+
+    private boolean clusterPerMethod = false;
+    private int maxNodesPerMethod = Integer.MAX_VALUE;
+    private final Set<EdgeKind> edges = EnumSet.allOf(EdgeKind.class);
+
+    public static DotOptions defaults() {
+        return new DotOptions();
+    }
+
+    // wraps every method in its own 'subgraph cluster_'
+    public DotOptions clusterPerMethod() {
+        this.clusterPerMethod = true;
+        return this;
+    }
+
+    // nodes beyond the limit are dropped (together with their edges)
+    // and replaced by a single truncation marker
+    public DotOptions maxNodesPerMethod(int maxNodesPerMethod) {
+        if (maxNodesPerMethod < 1)
+            throw new IllegalArgumentException("max nodes per method must be positive: " + maxNodesPerMethod);
+
+        this.maxNodesPerMethod = maxNodesPerMethod;
+        return this;
+    }
+
+    // hiding SUBTOKEN_OF (or OCCURRENCE_OF) edges also hides the
+    // vocabulary (or symbol) nodes, as they would be left unconnected
+    public DotOptions without(EdgeKind... kinds) {
+        this.edges.removeAll(Arrays.asList(kinds));
+        return this;
+    }
+
+    public DotOptions only(EdgeKind... kinds) {
+        this.edges.clear();
+        this.edges.addAll(Arrays.asList(kinds));
+        return this;
+    }
+
+    boolean isClusterPerMethod() {
+        return clusterPerMethod;
+    }
+
+    int getMaxNodesPerMethod() {
+        return maxNodesPerMethod;
+    }
+
+    boolean isTruncating() {
+        return maxNodesPerMethod != Integer.MAX_VALUE;
+    }
+
+    boolean includes(EdgeKind kind) {
+        return edges.contains(kind);
+    }
+}
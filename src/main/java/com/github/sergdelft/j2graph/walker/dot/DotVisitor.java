@@ -1,102 +1,342 @@
 package com.github.sergdelft.j2graph.walker.dot;
 
 import com.github.sergdelft.j2graph.graph.*;
+import com.github.sergdelft.j2graph.walker.EdgeKind;
 import com.github.sergdelft.j2graph.walker.Walker;
 
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Writes the graph in the dot format.
+ * <p>
+ * The output is streamed to the given {@link Writer} as the graph is walked
+ * (and flushed at the end of each class). The default constructor keeps the
+ * output in memory, so that it can be retrieved with {@link #asString()}.
+ * <p>
+ * For large classes, see {@link DotOptions} and {@link #perMethod(Path, DotOptions)}.
+ */
 public class DotVisitor implements Walker {
 
-    private StringBuilder builder = new StringBuilder();
+    private final DotOptions options;
+    private final Path methodDirectory;
+    private Writer out;
+
+    private final Set<Object> emitted = Collections.newSetFromMap(new IdentityHashMap<>());
+    private String className;
+    private int methodCount;
+    private int nodesInMethod;
+    private int truncatedNodes;
+
+    public DotVisitor() {
+        this(new StringWriter());
+    }
+
+    public DotVisitor(OutputStream out) {
+        this(out, DotOptions.defaults());
+    }
+
+    public DotVisitor(OutputStream out, DotOptions options) {
+        this(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)), options);
+    }
+
+    public DotVisitor(Writer out) {
+        this(out, DotOptions.defaults());
+    }
+
+    public DotVisitor(Writer out, DotOptions options) {
+        this(out, options, null);
+    }
+
+    private DotVisitor(Writer out, DotOptions options, Path methodDirectory) {
+        this.out = out;
+        this.options = options;
+        this.methodDirectory = methodDirectory;
+    }
+
+    /**
+     * Writes one digraph per method, each in its own file in the given directory.
+     */
+    public static DotVisitor perMethod(Path directory, DotOptions options) {
+        return new DotVisitor(null, options, directory);
+    }
 
     @Override
     public void className(String className) {
-        builder.append(String.format("digraph %s {\n", className));
-        builder.append(String.format("\tC [label=\"class %s\"]\n", className));
+        this.className = className;
+        this.methodCount = 0;
+        this.emitted.clear();
+
+        if (!isFilePerMethod())
+            header("digraph ", className);
     }
 
     @Override
     public void method(String methodName, NonTerminal root) {
-        builder.append(String.format("\n\t// ------ begin method %s\n\n", methodName));
+        methodCount++;
+        nodesInMethod = 0;
+        truncatedNodes = 0;
+
+        if (isFilePerMethod()) {
+            openMethodFile(methodName);
+            header("digraph \"", className + "." + methodName + "\"");
+        }
 
-        builder.append(String.format("\tM%d [label=\"M:%s\"];\n",root.getId(), methodName));
-        builder.append(String.format("\tC -> M%d\n", root.getId()));
-        builder.append(String.format("\tM%d -> NT%d\n", root.getId(), root.getId()));
+        write("\n\t// ------ begin method ", methodName, "\n\n");
+        if (isClusterPerMethod()) {
+            write("\tsubgraph cluster_", methodCount);
+            write(" {\n");
+        }
+
+        write("\tM", root.getId());
+        write(" [label=\"M:", methodName, "\"];\n");
+        // C is outside the clusters, so in a cluster its edge to M is written once the cluster is closed
+        if (!isClusterPerMethod())
+            classEdge(root);
+        // the root may yet be truncated away; the edge to it then waits for the end of the method
+        if (!options.isTruncating())
+            rootEdge(root);
     }
 
     public String asString() {
-        return builder.toString();
+        if (!(out instanceof StringWriter))
+            throw new IllegalStateException("dot output is streamed to a writer, not kept in memory");
+
+        return out.toString();
     }
 
     @Override
     public void nonTerminal(NonTerminal nonTerminal) {
-        builder.append(String.format("\tNT%d ",nonTerminal.getId()));
-        builder.append(String.format("[label=\"NT:%s\"];\n", nonTerminal.getName()));
+        if (!keep(nonTerminal))
+            return;
+
+        write("\tNT", nonTerminal.getId());
+        write(" [label=\"NT:", nonTerminal.getName(), "\"];\n");
     }
 
     @Override
     public void token(Token token) {
-        builder.append(String.format("\tT%d ",token.getId()));
-        builder.append(String.format("[label=\"T:%s\",shape=box, color=blue];\n", token.getTokenName()));
+        if (!keep(token))
+            return;
+
+        write("\tT", token.getId());
+        write(" [label=\"T:", token.getTokenName(), "\",shape=box, color=blue];\n");
     }
 
     @Override
     public void symbol(Symbol symbol) {
-        builder.append(String.format("\tS%d ",symbol.getId()));
-        builder.append(String.format("[label=\"S:%s\",shape=box,color=grey];\n", symbol.getSymbol()));
+        if (!options.includes(EdgeKind.OCCURRENCE_OF) || !keep(symbol))
+            return;
+
+        write("\tS", symbol.getId());
+        write(" [label=\"S:", symbol.getSymbol(), "\",shape=box,color=grey];\n");
     }
 
     @Override
     public void vocabulary(Vocabulary vocabulary) {
-        builder.append(String.format("\tV%d ",vocabulary.getId()));
-        builder.append(String.format("[label=\"V:%s\",color=green];\n", vocabulary.getWord()));
+        if (!options.includes(EdgeKind.SUBTOKEN_OF) || !keep(vocabulary))
+            return;
+
+        write("\tV", vocabulary.getId());
+        write(" [label=\"V:", vocabulary.getWord(), "\",color=green];\n");
     }
 
     @Override
     public void nextToken(Token t1, Token t2) {
-        builder.append(String.format("\tT%d -> T%d [color=blue, label=\"next token\"];\n", t1.getId(), t2.getId()));
+        if (keep(EdgeKind.NEXT_TOKEN, t1, t2))
+            edge("T", t1.getId(), "T", t2.getId(), " [color=blue, label=\"next token\"];\n");
     }
 
     @Override
     public void child(NonTerminal t1, Token t2) {
-        builder.append(String.format("\tNT%d -> T%d [color=red, label=\"child\"];\n", t1.getId(), t2.getId()));
+        if (keep(EdgeKind.CHILD, t1, t2))
+            edge("NT", t1.getId(), "T", t2.getId(), " [color=red, label=\"child\"];\n");
     }
 
     @Override
     public void child(NonTerminal t1, NonTerminal t2) {
-        builder.append(String.format("\tNT%d -> NT%d [color=red, label=\"child\"];\n", t1.getId(), t2.getId()));
+        if (keep(EdgeKind.CHILD, t1, t2))
+            edge("NT", t1.getId(), "NT", t2.getId(), " [color=red, label=\"child\"];\n");
     }
 
     @Override
     public void occurrenceOf(Token t1, Symbol t2) {
-        builder.append(String.format("\tT%d -> S%d [color=black, label=\"occurence of\"];\n", t1.getId(), t2.getId()));
+        if (keep(EdgeKind.OCCURRENCE_OF, t1, t2))
+            edge("T", t1.getId(), "S", t2.getId(), " [color=black, label=\"occurence of\"];\n");
     }
 
     @Override
     public void subtokenOf(Vocabulary t1, Token t2) {
-        builder.append(String.format("\tV%d -> T%d [color=green, label=\"subtoken of\"];\n", t1.getId(), t2.getId()));
+        if (keep(EdgeKind.SUBTOKEN_OF, t1, t2))
+            edge("V", t1.getId(), "T", t2.getId(), " [color=green, label=\"subtoken of\"];\n");
     }
 
     @Override
     public void returnsTo(NonTerminal t1, Token t2) {
-        builder.append(String.format("\tT%d -> NT%d [color=black, style=dotted, label=\"returns to\"];\n", t2.getId(), t1.getId()));
+        if (keep(EdgeKind.RETURNS_TO, t1, t2))
+            edge("T", t2.getId(), "NT", t1.getId(), " [color=black, style=dotted, label=\"returns to\"];\n");
     }
 
     @Override
     public void nextLexicalUse(Token t1, Token t2) {
-        builder.append(String.format("\tT%d -> T%d [color=orange, label=\"next lexical use\",style=dashed];\n", t1.getId(), t2.getId()));
+        if (keep(EdgeKind.NEXT_LEXICAL_USE, t1, t2))
+            edge("T", t1.getId(), "T", t2.getId(), " [color=orange, label=\"next lexical use\",style=dashed];\n");
     }
 
     @Override
     public void assignedFrom(Token t1, NonTerminal t2) {
-        builder.append(String.format("\tT%d -> NT%d [color=brown, label=\"assigned from\",style=dotted];\n", t1.getId(), t2.getId()));
+        if (keep(EdgeKind.ASSIGNED_FROM, t1, t2))
+            edge("T", t1.getId(), "NT", t2.getId(), " [color=brown, label=\"assigned from\",style=dotted];\n");
     }
 
     @Override
     public void end() {
-        builder.append(String.format("}"));
+        if (isFilePerMethod())
+            return;
+
+        write("}");
+        flush();
     }
 
     @Override
     public void endMethod(String methodName, NonTerminal root) {
-        builder.append(String.format("\t// ------ end method %s\n\n", methodName));
+        if (options.isTruncating() && emitted.contains(root))
+            rootEdge(root);
+
+        if (truncatedNodes > 0) {
+            write("\tTRUNC", root.getId());
+            write(" [label=\"... ");
+            write(truncatedNodes);
+            write(" more nodes\",shape=plaintext];\n");
+            write("\tM", root.getId());
+            write(" -> TRUNC", root.getId());
+            write(" [style=dashed];\n");
+        }
+
+        if (isClusterPerMethod()) {
+            write("\t}\n");
+            classEdge(root);
+        }
+
+        write("\t// ------ end method ", methodName, "\n\n");
+
+        if (isFilePerMethod()) {
+            write("}");
+            close();
+        }
+    }
+
+    private boolean isFilePerMethod() {
+        return methodDirectory != null;
+    }
+
+    private boolean isClusterPerMethod() {
+        return !isFilePerMethod() && options.isClusterPerMethod();
+    }
+
+    // counts the node against the limit of the method
+    private boolean keep(Object node) {
+        if (nodesInMethod >= options.getMaxNodesPerMethod()) {
+            truncatedNodes++;
+            return false;
+        }
+
+        nodesInMethod++;
+        if (options.isTruncating())
+            emitted.add(node);
+        return true;
+    }
+
+    // edges to nodes that were truncated away are dropped as well
+    private boolean keep(EdgeKind kind, Object from, Object to) {
+        if (!options.includes(kind))
+            return false;
+
+        return !options.isTruncating() || (emitted.contains(from) && emitted.contains(to));
+    }
+
+    private void header(String prefix, String name) {
+        write(prefix, name, " {\n");
+        write("\tC [label=\"class ", className, "\"]\n");
+    }
+
+    private void classEdge(NonTerminal root) {
+        write("\tC -> M", root.getId());
+        write("\n");
+    }
+
+    private void rootEdge(NonTerminal root) {
+        write("\tM", root.getId());
+        write(" -> NT", root.getId());
+        write("\n");
+    }
+
+    private void openMethodFile(String methodName) {
+        String fileName = String.format("%s-%03d-%s.dot", className, methodCount, methodName)
+                .replaceAll("[^A-Za-z0-9_.\\-]", "_");
+
+        try {
+            out = Files.newBufferedWriter(methodDirectory.resolve(fileName), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void edge(String fromPrefix, int from, String toPrefix, int to, String attributes) {
+        write("\t", fromPrefix);
+        write(from);
+        write(" -> ", toPrefix);
+        write(to);
+        write(attributes);
+    }
+
+    private void write(String prefix, int id) {
+        write(prefix);
+        write(id);
+    }
+
+    private void write(String before, String value, String after) {
+        write(before);
+        write(value);
+        write(after);
+    }
+
+    private void write(String first, String second) {
+        write(first);
+        write(second);
+    }
+
+    private void write(int value) {
+        write(Integer.toString(value));
+    }
+
+    // null names and labels are written as "null", as String.format did
+    private void write(String value) {
+        try {
+            out.write(String.valueOf(value));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void flush() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void close() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 }
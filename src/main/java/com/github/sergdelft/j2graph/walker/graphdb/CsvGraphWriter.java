@@ -0,0 +1,90 @@
+package com.github.sergdelft.j2graph.walker.graphdb;
+
+import com.github.sergdelft.j2graph.graph.NonTerminal;
+import com.github.sergdelft.j2graph.walker.BufferingWalker;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes the method graphs as two CSV files (RFC 4180), for the bulk import of graph databases:
+ * <ul>
+ *     <li>nodes.csv: id, kind, label, class_name, method_name</li>
+ *     <li>edges.csv: source, target, type</li>
+ * </ul>
+ * Node ids are unique across everything the writer is given, as they are numbered
+ * in the order the nodes are written. Kinds are {@link com.github.sergdelft.j2graph.walker.NodeKind}
+ * names, and edge types are the {@link com.github.sergdelft.j2graph.walker.EdgeKind} labels
+ * (the ones in the dot output). Memory does not grow with the corpus: each method
+ * is written as soon as it was walked.
+ */
+public class CsvGraphWriter extends BufferingWalker implements Closeable {
+
+    private final Writer nodes;
+    private final Writer edges;
+    private long firstNodeId = 0;
+
+    public CsvGraphWriter(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        nodes = Files.newBufferedWriter(directory.resolve("nodes.csv"), StandardCharsets.UTF_8);
+        edges = Files.newBufferedWriter(directory.resolve("edges.csv"), StandardCharsets.UTF_8);
+
+        nodes.write("id,kind,label,class_name,method_name\r\n");
+        edges.write("source,target,type\r\n");
+    }
+
+    @Override
+    protected void writeMethod(String methodName, NonTerminal root) {
+        try {
+            String className = escape(getClassName());
+            String method = escape(methodName);
+
+            for (int id = 0; id < nodeCount(); id++) {
+                nodes.write(Long.toString(firstNodeId + id));
+                nodes.write(',');
+                nodes.write(nodeKind(id).name());
+                nodes.write(',');
+                nodes.write(escape(label(id)));
+                nodes.write(',');
+                nodes.write(className);
+                nodes.write(',');
+                nodes.write(method);
+                nodes.write("\r\n");
+            }
+
+            for (int edge = 0; edge < edgeCount(); edge++) {
+                edges.write(Long.toString(firstNodeId + edgeFrom(edge)));
+                edges.write(',');
+                edges.write(Long.toString(firstNodeId + edgeTo(edge)));
+                edges.write(',');
+                edges.write(edgeKind(edge).getLabel());
+                edges.write("\r\n");
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        firstNodeId += nodeCount();
+    }
+
+    @Override
+    public void close() throws IOException {
+        nodes.close();
+        edges.close();
+    }
+
+    // quotes fields with separators, quotes or line breaks, doubling the quotes inside
+    static String escape(String field) {
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == ',' || c == '"' || c == '\r' || c == '\n')
+                return '"' + field.replace("\"", "\"\"") + '"';
+        }
+        return field;
+    }
+}
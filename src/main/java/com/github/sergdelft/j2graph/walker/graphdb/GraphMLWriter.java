@@ -0,0 +1,97 @@
+package com.github.sergdelft.j2graph.walker.graphdb;
+
+import com.github.sergdelft.j2graph.graph.NonTerminal;
+import com.github.sergdelft.j2graph.walker.BufferingWalker;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * Writes the method graphs as one GraphML document, with the same node ids and
+ * attributes as {@link CsvGraphWriter}: kind, label, class_name and method_name
+ * for nodes, and type for edges.
+ * <p>
+ * All methods go to a single directed graph, streamed as they are walked; the
+ * document is complete once the writer is closed.
+ */
+public class GraphMLWriter extends BufferingWalker implements Closeable {
+
+    private final Writer out;
+    private long firstNodeId = 0;
+
+    public GraphMLWriter(Writer out) throws IOException {
+        this.out = out;
+
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        out.write("<graphml xmlns=\"http://graphml.graphdrawing.org/xmlns\">\n");
+        out.write("  <key id=\"kind\" for=\"node\" attr.name=\"kind\" attr.type=\"string\"/>\n");
+        out.write("  <key id=\"label\" for=\"node\" attr.name=\"label\" attr.type=\"string\"/>\n");
+        out.write("  <key id=\"class_name\" for=\"node\" attr.name=\"class_name\" attr.type=\"string\"/>\n");
+        out.write("  <key id=\"method_name\" for=\"node\" attr.name=\"method_name\" attr.type=\"string\"/>\n");
+        out.write("  <key id=\"type\" for=\"edge\" attr.name=\"type\" attr.type=\"string\"/>\n");
+        out.write("  <graph id=\"G\" edgedefault=\"directed\">\n");
+    }
+
+    @Override
+    protected void writeMethod(String methodName, NonTerminal root) {
+        try {
+            String className = escape(getClassName());
+            String method = escape(methodName);
+
+            for (int id = 0; id < nodeCount(); id++) {
+                out.write("    <node id=\"n");
+                out.write(Long.toString(firstNodeId + id));
+                out.write("\">");
+                data("kind", nodeKind(id).name());
+                data("label", escape(label(id)));
+                data("class_name", className);
+                data("method_name", method);
+                out.write("</node>\n");
+            }
+
+            for (int edge = 0; edge < edgeCount(); edge++) {
+                out.write("    <edge source=\"n");
+                out.write(Long.toString(firstNodeId + edgeFrom(edge)));
+                out.write("\" target=\"n");
+                out.write(Long.toString(firstNodeId + edgeTo(edge)));
+                out.write("\">");
+                data("type", edgeKind(edge).getLabel());
+                out.write("</edge>\n");
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        firstNodeId += nodeCount();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.write("  </graph>\n");
+        out.write("</graphml>\n");
+        out.close();
+    }
+
+    private void data(String key, String escapedValue) throws IOException {
+        out.write("<data key=\"");
+        out.write(key);
+        out.write("\">");
+        out.write(escapedValue);
+        out.write("</data>");
+    }
+
+    static String escape(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '<' || c == '>' || c == '&' || c == '"') {
+                return text.replace("&", "&amp;")
+                        .replace("<", "&lt;")
+                        .replace(">", "&gt;")
+                        .replace("\"", "&quot;");
+            }
+        }
+        return text;
+    }
+}
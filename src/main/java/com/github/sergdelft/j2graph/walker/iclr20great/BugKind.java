@@ -0,0 +1,26 @@
+package com.github.sergdelft.j2graph.walker.iclr20great;
+
+/**
+ * The kinds of bugs {@link ICLR20GreatJsonWriter} injects, each as a change of one token.
+ * The value and the name go to the bug_kind and bug_kind_name of a buggy sample.
+ */
+public enum BugKind {
+    // a comparison (<,<=,>,>=) that includes or excludes its bound
+    OFF_BY_ONE(1),
+    // a use of a variable replaced by another variable of the method
+    VARIABLE_MISUSE(2),
+    // == and != swapped, or && and ||
+    OPERATOR_SWAP(3),
+    // an integer literal that is one more or one less
+    LITERAL_OFF_BY_ONE(4);
+
+    private final int value;
+
+    BugKind(int value) {
+        this.value = value;
+    }
+
+    public int getValue() {
+        return value;
+    }
+}
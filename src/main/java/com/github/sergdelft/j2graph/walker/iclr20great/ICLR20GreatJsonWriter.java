@@ -0,0 +1,583 @@
+package com.github.sergdelft.j2graph.walker.iclr20great;
+
+import com.github.sergdelft.j2graph.graph.NonTerminal;
+import com.github.sergdelft.j2graph.output.ShardedOutput;
+import com.github.sergdelft.j2graph.walker.BufferingWalker;
+import com.github.sergdelft.j2graph.walker.EdgeKind;
+import com.github.sergdelft.j2graph.walker.FileRandom;
+import com.github.sergdelft.j2graph.walker.NodeKind;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * Streams data in the ICLR20-Great format: https://github.com/VHellendoorn/ICLR20-Great
+ * <p>
+ * Writes the same lines as {@link ICLR20GreatVisitor}, one JSON object per line, but
+ * straight from the method buffers instead of building Gson trees. The buggy sample
+ * is written from the same buffers, with the mutated binary expression (<,<=,>,>=)
+ * patched in. Methods without edges or without a binary expression to mutate are skipped.
+ * <p>
+ * More kinds of bugs can be enabled with {@link #setBugKinds(Set)}; a method then gets
+ * a buggy sample for every kind it has a place for (and is skipped if it has none).
+ * Every bug changes one source token, so the buggy samples are spliced from the
+ * serialized correct sample instead of being serialized again. For a variable misuse,
+ * the repair candidates are the uses of the variables of the method (names that occur
+ * at least twice), and the repair targets are the other uses of the replaced variable.
+ * <p>
+ * In the dictionary-encoded mode, the strings of the samples are written to a separate
+ * string table, one JSON string per line, the first time they appear; the source tokens
+ * of the samples are then the line numbers (from 0) in that table, and the edges are
+ * [from, to, type], without the name of the type.
+ * <p>
+ * Samples can also go to a {@link ShardedOutput}, one record per line. There, every
+ * shard has its own string table (e.g., train-00000.strings.txt), so that shards can
+ * be decoded independently.
+ * <p>
+ * With {@link #setLabelIds(ToIntFunction)}, the source tokens are written as the ids the
+ * function gives them (e.g., {@link com.github.sergdelft.j2graph.vocabulary.HashedLabelIds}),
+ * with no string table.
+ * <p>
+ * When given a seed, the mutated expression and the decision to write the buggy sample
+ * are drawn from the random numbers of the file (see {@link FileRandom}) that
+ * {@link #beginFile(Path)} starts, so that the samples of a file are the same in every run.
+ */
+public class ICLR20GreatJsonWriter extends BufferingWalker {
+
+    public static final String STRINGS_SUFFIX = ".strings.txt";
+
+    private static final String[] EDGE_NAMES = Arrays.stream(ICLR20GreatVisitor.EdgeType.values())
+            .map(Enum::toString)
+            .toArray(String[]::new);
+
+    // the longest integer literal that is mutated, so that one more still fits in a long
+    private static final int MAX_LITERAL_DIGITS = 18;
+
+    private final Writer out;
+    private final StringWriter line = new StringWriter();
+    private final JsonWriter json;
+    private final StringWriter value = new StringWriter();
+    private final JsonWriter valueJson;
+    private final Predicate<SplittableRandom> writeBuggy;
+    private final boolean seeded;
+    private final long seed;
+    private SplittableRandom random;
+    private Set<BugKind> bugKinds = EnumSet.of(BugKind.OFF_BY_ONE);
+
+    private final ShardedOutput output;
+    private final boolean dictionaryEncoded;
+    private Writer stringsOut;
+    private JsonWriter strings;
+    private final Map<String, Integer> stringIds = new HashMap<>();
+    private int stringsShard = -1;
+    private ToIntFunction<String> labelIds;
+
+    // the bugs found in the current method, one per kind at most
+    private final Bug[] bugs = new Bug[BugKind.values().length];
+    private int bugCount;
+    private int[] candidates = new int[16];
+
+    // the variables of the current method: the symbol a token is an occurrence of (or -1), and its number of occurrences
+    private int[] symbolOf = new int[256];
+    private int[] occurrences = new int[256];
+    private int[] variables = new int[16];
+
+    // where the source tokens (from the comma before them) and the edges end in the correct sample
+    private int tokensStart;
+    private int edgesEnd;
+    private int[] tokenEnds = new int[256];
+
+    private int samplesInClass;
+
+    /**
+     * @param writeBuggy decides, for each correct sample, whether its buggy version is also written
+     */
+    public ICLR20GreatJsonWriter(Writer out, BooleanSupplier writeBuggy) {
+        this(out, null, writeBuggy);
+    }
+
+    /**
+     * Draws from the random numbers of each file, derived from {@code seed}.
+     *
+     * @param writeBuggy decides, for each correct sample and with the random numbers of its file,
+     *                   whether its buggy version is also written
+     */
+    public ICLR20GreatJsonWriter(Writer out, long seed, Predicate<SplittableRandom> writeBuggy) {
+        this(out, null, false, true, seed, writeBuggy);
+    }
+
+    /**
+     * Writes the samples dictionary-encoded, with the string table going to {@code strings}.
+     *
+     * @param writeBuggy decides, for each correct sample, whether its buggy version is also written
+     */
+    public ICLR20GreatJsonWriter(Writer out, Writer strings, BooleanSupplier writeBuggy) {
+        this(out, null, strings != null, false, 0, random -> writeBuggy.getAsBoolean());
+        if (strings != null)
+            useStrings(strings);
+    }
+
+    /**
+     * Writes one sample per record of the output, dictionary-encoded or not.
+     *
+     * @param writeBuggy decides, for each correct sample, whether its buggy version is also written
+     */
+    public ICLR20GreatJsonWriter(ShardedOutput output, boolean dictionaryEncoded, BooleanSupplier writeBuggy) {
+        this(output.writer(), output, dictionaryEncoded, false, 0, random -> writeBuggy.getAsBoolean());
+    }
+
+    /**
+     * Writes one sample per record of the output, drawing from the random numbers
+     * of each file, derived from {@code seed}.
+     *
+     * @param writeBuggy decides, for each correct sample and with the random numbers of its file,
+     *                   whether its buggy version is also written
+     */
+    public ICLR20GreatJsonWriter(ShardedOutput output, boolean dictionaryEncoded, long seed, Predicate<SplittableRandom> writeBuggy) {
+        this(output.writer(), output, dictionaryEncoded, true, seed, writeBuggy);
+    }
+
+    private ICLR20GreatJsonWriter(Writer out, ShardedOutput output, boolean dictionaryEncoded,
+                                  boolean seeded, long seed, Predicate<SplittableRandom> writeBuggy) {
+        this.out = out;
+        this.json = new JsonWriter(line);
+        this.json.setLenient(true);
+        this.valueJson = new JsonWriter(value);
+        this.valueJson.setLenient(true);
+        this.writeBuggy = writeBuggy;
+        this.output = output;
+        this.dictionaryEncoded = dictionaryEncoded;
+        this.seeded = seeded;
+        this.seed = seed;
+        this.random = seeded ? new SplittableRandom(seed) : new SplittableRandom();
+
+        for (int i = 0; i < bugs.length; i++)
+            bugs[i] = new Bug();
+    }
+
+    /**
+     * The kinds of bugs to inject (only {@link BugKind#OFF_BY_ONE} by default).
+     * {@code writeBuggy} is asked for every buggy sample.
+     */
+    public void setBugKinds(Set<BugKind> bugKinds) {
+        if (bugKinds.isEmpty())
+            throw new IllegalArgumentException("at least one kind of bug is needed");
+        this.bugKinds = EnumSet.copyOf(bugKinds);
+    }
+
+    // writes the source tokens as ids, instead of strings or ids in a string table
+    public void setLabelIds(ToIntFunction<String> labelIds) {
+        this.labelIds = labelIds;
+    }
+
+    @Override
+    public void beginFile(Path file) {
+        if (output != null)
+            output.setSource(file);
+        if (seeded)
+            random = FileRandom.forFile(seed, file);
+    }
+
+    @Override
+    public void className(String className) {
+        super.className(className);
+        samplesInClass = 0;
+    }
+
+    // number of correct samples written for the last class
+    public int getSamplesInClass() {
+        return samplesInClass;
+    }
+
+    @Override
+    protected void writeMethod(String methodName, NonTerminal root) {
+        if (edgeCount() == 0)
+            return;
+
+        findBugs();
+        if (bugCount == 0)
+            return;
+
+        try {
+            if (output != null && isDictionaryEncoded())
+                startShardStrings();
+            String correct = serialize(root);
+            writeLine(correct);
+
+            for (int i = 0; i < bugCount; i++) {
+                if (writeBuggy.test(random))
+                    correct = writeBuggySample(root, correct, bugs[i]);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        samplesInClass++;
+    }
+
+    @Override
+    public void endBatch(int batch) {
+        flush();
+    }
+
+    @Override
+    public void end() {
+        flush();
+    }
+
+    // picks a place for every kind of bug, in the order of the kinds
+    private void findBugs() {
+        bugCount = 0;
+        for (BugKind kind : bugKinds) {
+            Bug bug = bugs[bugCount];
+            bug.kind = kind;
+            bug.targetCount = 0;
+            bug.candidateCount = 0;
+
+            boolean found;
+            switch (kind) {
+                case VARIABLE_MISUSE:
+                    found = findVariableMisuse(bug);
+                    break;
+                case LITERAL_OFF_BY_ONE:
+                    found = findLiteral(bug);
+                    break;
+                default:
+                    found = findOperator(bug);
+                    break;
+            }
+            if (found)
+                bugCount++;
+        }
+    }
+
+    private boolean findOperator(Bug bug) {
+        int count = 0;
+        for (int id = 0; id < nodeCount(); id++) {
+            if (mutate(bug.kind, label(id)) != null)
+                count = addCandidate(count, id);
+        }
+        if (count == 0)
+            return false;
+
+        bug.node = candidates[random.nextInt(count)];
+        bug.label = mutate(bug.kind, label(bug.node));
+        return true;
+    }
+
+    private boolean findLiteral(Bug bug) {
+        int count = 0;
+        for (int id = 0; id < nodeCount(); id++) {
+            if (nodeKind(id) == NodeKind.TOKEN && isIntegerLiteral(label(id)))
+                count = addCandidate(count, id);
+        }
+        if (count == 0)
+            return false;
+
+        bug.node = candidates[random.nextInt(count)];
+        long literal = Long.parseLong(label(bug.node));
+        bug.label = Long.toString(literal == 0 || random.nextBoolean() ? literal + 1 : literal - 1);
+        return true;
+    }
+
+    private boolean findVariableMisuse(Bug bug) {
+        if (symbolOf.length < nodeCount()) {
+            symbolOf = new int[Math.max(nodeCount(), symbolOf.length * 2)];
+            occurrences = new int[symbolOf.length];
+        }
+        Arrays.fill(symbolOf, 0, nodeCount(), -1);
+        Arrays.fill(occurrences, 0, nodeCount(), 0);
+
+        for (int edge = 0; edge < edgeCount(); edge++) {
+            if (edgeKind(edge) == EdgeKind.OCCURRENCE_OF) {
+                symbolOf[edgeFrom(edge)] = edgeTo(edge);
+                occurrences[edgeTo(edge)]++;
+            }
+        }
+
+        int variableCount = 0;
+        for (int id = 0; id < nodeCount(); id++) {
+            if (nodeKind(id) == NodeKind.SYMBOL && occurrences[id] >= 2) {
+                if (variableCount == variables.length)
+                    variables = Arrays.copyOf(variables, variableCount * 2);
+                variables[variableCount++] = id;
+            }
+        }
+        if (variableCount < 2)
+            return false;
+
+        int count = 0;
+        for (int id = 0; id < nodeCount(); id++) {
+            if (symbolOf[id] >= 0 && occurrences[symbolOf[id]] >= 2)
+                count = addCandidate(count, id);
+        }
+
+        bug.node = candidates[random.nextInt(count)];
+        int replacement = random.nextInt(variableCount - 1);
+        if (variables[replacement] == symbolOf[bug.node])
+            replacement = variableCount - 1;
+        bug.label = label(variables[replacement]);
+
+        for (int i = 0; i < count; i++) {
+            bug.addCandidate(candidates[i]);
+            if (candidates[i] != bug.node && symbolOf[candidates[i]] == symbolOf[bug.node])
+                bug.addTarget(candidates[i]);
+        }
+        return true;
+    }
+
+    private int addCandidate(int count, int id) {
+        if (count == candidates.length)
+            candidates = Arrays.copyOf(candidates, count * 2);
+        candidates[count] = id;
+        return count + 1;
+    }
+
+    private static boolean isIntegerLiteral(String label) {
+        if (label.isEmpty() || label.length() > MAX_LITERAL_DIGITS)
+            return false;
+        for (int i = 0; i < label.length(); i++) {
+            if (label.charAt(i) < '0' || label.charAt(i) > '9')
+                return false;
+        }
+        return true;
+    }
+
+    private static String mutate(BugKind kind, String operator) {
+        if (kind == BugKind.OPERATOR_SWAP) {
+            switch (operator) {
+                case "==":
+                    return "!=";
+                case "!=":
+                    return "==";
+                case "&&":
+                    return "||";
+                case "||":
+                    return "&&";
+                default:
+                    return null;
+            }
+        }
+
+        switch (operator) {
+            case "<":
+                return "<=";
+            case "<=":
+                return "<";
+            case ">":
+                return ">=";
+            case ">=":
+                return ">";
+            default:
+                return null;
+        }
+    }
+
+    // the correct sample, keeping where its source tokens and edges are;
+    // ids in the output are shifted by one, as the first source token is the method's root
+    private String serialize(NonTerminal root) throws IOException {
+        line.getBuffer().setLength(0);
+        json.beginObject();
+        writeRepairCandidates(null);
+        writeBugginess(null);
+
+        tokensStart = line.getBuffer().length();
+        if (tokenEnds.length < nodeCount() + 1)
+            tokenEnds = new int[Math.max(nodeCount() + 1, tokenEnds.length * 2)];
+
+        json.name("source_tokens").beginArray();
+        writeString(root.getName());
+        tokenEnds[0] = line.getBuffer().length();
+        for (int id = 0; id < nodeCount(); id++) {
+            writeString(label(id));
+            tokenEnds[id + 1] = line.getBuffer().length();
+        }
+        json.endArray();
+
+        json.name("edges").beginArray();
+        for (int edge = 0; edge < edgeCount(); edge++) {
+            int type = edgeKind(edge).getValue();
+            json.beginArray()
+                    .value(edgeFrom(edge) + 1)
+                    .value(edgeTo(edge) + 1)
+                    .value(type);
+            if (!isDictionaryEncoded())
+                json.value(EDGE_NAMES[type]);
+            json.endArray();
+        }
+        json.endArray();
+        edgesEnd = line.getBuffer().length();
+
+        json.endObject();
+        return line.toString();
+    }
+
+    // the correct sample, with the token of the bug replaced and the bug described at the end
+    private String writeBuggySample(NonTerminal root, String correct, Bug bug) throws IOException {
+        // the ids of the correct sample are only valid in the string table of its shard
+        if (output != null && isDictionaryEncoded() && startShardStrings())
+            correct = serialize(root);
+
+        String patched = encode(bug.label);
+        int tokenStart = tokenEnds[bug.node] + 1;
+        int tokenEnd = tokenEnds[bug.node + 1];
+
+        line.getBuffer().setLength(0);
+        json.beginObject();
+        writeRepairCandidates(bug);
+        line.write(correct, tokensStart, tokenStart - tokensStart);
+        line.write(patched);
+        line.write(correct, tokenEnd, edgesEnd - tokenEnd);
+        writeBugginess(bug);
+        json.endObject();
+
+        writeLine(line.toString());
+        return correct;
+    }
+
+    private void writeLine(String sample) throws IOException {
+        out.write(sample);
+        out.write('\n');
+        if (output != null) {
+            if (isDictionaryEncoded())
+                stringsOut.flush();
+            output.endRecord();
+        }
+    }
+
+    // starts a new string table when the sample goes to a new shard, telling whether it did
+    private boolean startShardStrings() throws IOException {
+        output.stream();
+        if (output.getShardCount() == stringsShard)
+            return false;
+
+        stringsShard = output.getShardCount();
+        stringIds.clear();
+        useStrings(new OutputStreamWriter(output.companion(STRINGS_SUFFIX), StandardCharsets.UTF_8));
+        return true;
+    }
+
+    private void useStrings(Writer writer) {
+        stringsOut = writer;
+        strings = new JsonWriter(writer);
+        strings.setLenient(true);
+    }
+
+    private boolean isDictionaryEncoded() {
+        return dictionaryEncoded;
+    }
+
+    // the string itself, its label id, or its id in the string table (adding it to the table when new)
+    private void writeString(String value) throws IOException {
+        if (labelIds != null) {
+            json.value(labelIds.applyAsInt(value));
+            return;
+        }
+        if (!isDictionaryEncoded()) {
+            json.value(value);
+            return;
+        }
+
+        json.value(stringId(value));
+    }
+
+    // the string as it appears in a sample
+    private String encode(String string) throws IOException {
+        if (labelIds != null)
+            return Integer.toString(labelIds.applyAsInt(string));
+        if (isDictionaryEncoded())
+            return Integer.toString(stringId(string));
+
+        value.getBuffer().setLength(0);
+        valueJson.value(string);
+        valueJson.flush();
+        return value.toString();
+    }
+
+    private int stringId(String value) throws IOException {
+        Integer id = stringIds.get(value);
+        if (id == null) {
+            id = stringIds.size();
+            stringIds.put(value, id);
+            strings.value(value);
+            stringsOut.write('\n');
+        }
+        return id;
+    }
+
+    private void writeRepairCandidates(Bug bug) throws IOException {
+        json.name("repair_candidates").beginArray();
+        if (bug == null || bug.candidateCount == 0) {
+            json.value(0);
+        } else {
+            for (int i = 0; i < bug.candidateCount; i++)
+                json.value(bug.candidates[i] + 1);
+        }
+        json.endArray();
+    }
+
+    private void writeBugginess(Bug bug) throws IOException {
+        boolean isBug = bug != null;
+        json.name("has_bug").value(isBug ? "true" : "false");
+        json.name("bug_kind").value(isBug ? bug.kind.getValue() : 0);
+        json.name("bug_kind_name").value(isBug ? bug.kind.name() : "NONE");
+        json.name("error_location").value(isBug ? bug.node + 1 : 0);
+        json.name("repair_targets").beginArray();
+        if (isBug && bug.targetCount == 0)
+            json.value(0);
+        else if (isBug) {
+            for (int i = 0; i < bug.targetCount; i++)
+                json.value(bug.targets[i] + 1);
+        }
+        json.endArray();
+    }
+
+    private void flush() {
+        try {
+            // shard string tables are flushed with every sample, and closed with their shard
+            if (output == null && stringsOut != null)
+                stringsOut.flush();
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // a token of the method to replace, and where to repair it (for a variable misuse)
+    private static final class Bug {
+        private BugKind kind;
+        private int node;
+        private String label;
+        private int[] targets = new int[8];
+        private int targetCount;
+        private int[] candidates = new int[8];
+        private int candidateCount;
+
+        void addTarget(int id) {
+            if (targetCount == targets.length)
+                targets = Arrays.copyOf(targets, targetCount * 2);
+            targets[targetCount++] = id;
+        }
+
+        void addCandidate(int id) {
+            if (candidateCount == candidates.length)
+                candidates = Arrays.copyOf(candidates, candidateCount * 2);
+            candidates[candidateCount++] = id;
+        }
+    }
+}
@@ -10,13 +10,18 @@ import org.apache.commons.lang3.tuple.ImmutablePair;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Random;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.BitSet;
+import java.util.SplittableRandom;
 
 /**
  * Visitor to help generate data for ICLR20-Great data format: https://github.com/VHellendoorn/ICLR20-Great
  * <p>
- * The Visitor also mutates binary expressions (<,<=,>,>=)
+ * The Visitor also mutates binary expressions (<,<=,>,>=), picking the one to mutate
+ * with the given random numbers (e.g., those of the file, see {@link com.github.sergdelft.j2graph.walker.FileRandom})
+ * <p>
+ * The data generator writes the same samples with {@link ICLR20GreatJsonWriter}, which
+ * checks the ends of the edges against the nodes buffered by its
+ * {@link com.github.sergdelft.j2graph.walker.BufferingWalker}; this visitor builds Gson trees.
  */
 public class ICLR20GreatVisitor implements Walker {
 
@@ -26,7 +31,17 @@ public class ICLR20GreatVisitor implements Walker {
     private JsonObject buggyJson;
     private JsonArray edges = new JsonArray();
     private ArrayList<String> tokens = new ArrayList<>();
-    private ArrayList<Integer> tokenIds = new ArrayList<>();
+    // the (per-method) ids of the nodes of the current method
+    private final BitSet nodeIds = new BitSet();
+    private final SplittableRandom random;
+
+    public ICLR20GreatVisitor() {
+        this(new SplittableRandom());
+    }
+
+    public ICLR20GreatVisitor(SplittableRandom random) {
+        this.random = random;
+    }
 
     private void addDummyData() {
         correctJson.add("repair_candidates", new Gson().toJsonTree(new int[]{0}));
@@ -44,7 +59,7 @@ public class ICLR20GreatVisitor implements Walker {
         markForBugginess(correctJson, false, 0);
 
         root.setId(counter);
-        tokenIds.add(root.getId());
+        nodeIds.set(root.getId());
         tokens.add(root.getName());
     }
 
@@ -65,7 +80,7 @@ public class ICLR20GreatVisitor implements Walker {
         counter += 1;
         nonTerminal.setId(counter);
         tokens.add(nonTerminal.getName());
-        tokenIds.add(counter);
+        nodeIds.set(counter);
     }
 
     @Override
@@ -73,7 +88,7 @@ public class ICLR20GreatVisitor implements Walker {
         counter += 1;
         token.setId(counter);
         tokens.add(token.getTokenName());
-        tokenIds.add(counter);
+        nodeIds.set(counter);
     }
 
     @Override
@@ -81,7 +96,7 @@ public class ICLR20GreatVisitor implements Walker {
         counter += 1;
         symbol.setId(counter);
         tokens.add(symbol.getSymbol());
-        tokenIds.add(counter);
+        nodeIds.set(counter);
     }
 
     @Override
@@ -89,61 +104,61 @@ public class ICLR20GreatVisitor implements Walker {
         counter += 1;
         vocabulary.setId(counter);
         tokens.add(vocabulary.getWord());
-        tokenIds.add(counter);
+        nodeIds.set(counter);
     }
 
     @Override
     public void nextToken(Token t1, Token t2) {
-        if (tokenIds.contains(t1.getId()) && tokenIds.contains(t2.getId())) {
+        if (inMethod(t1.getId(), t2.getId())) {
             addEdge(t1.getId(), t2.getId(), EdgeType.NEXT_TOKEN);
         }
     }
 
     @Override
     public void child(NonTerminal t1, Token t2) {
-        if (tokenIds.contains(t1.getId()) && tokenIds.contains(t2.getId())) {
+        if (inMethod(t1.getId(), t2.getId())) {
             addEdge(t1.getId(), t2.getId(), EdgeType.CHILD);
         }
     }
 
     @Override
     public void child(NonTerminal t1, NonTerminal t2) {
-        if (tokenIds.contains(t1.getId()) && tokenIds.contains(t2.getId())) {
+        if (inMethod(t1.getId(), t2.getId())) {
             addEdge(t1.getId(), t2.getId(), EdgeType.CHILD);
         }
     }
 
     @Override
     public void occurrenceOf(Token t1, Symbol t2) {
-        if (tokenIds.contains(t1.getId()) && tokenIds.contains(t2.getId())) {
+        if (inMethod(t1.getId(), t2.getId())) {
             addEdge(t1.getId(), t2.getId(), EdgeType.OCCURENCE_OF);
         }
     }
 
     @Override
     public void subtokenOf(Vocabulary t1, Token t2) {
-        if (tokenIds.contains(t1.getId()) && tokenIds.contains(t2.getId())) {
+        if (inMethod(t1.getId(), t2.getId())) {
             addEdge(t1.getId(), t2.getId(), EdgeType.SUBTOKEN_OF);
         }
     }
 
     @Override
     public void returnsTo(NonTerminal t1, Token t2) {
-        if (tokenIds.contains(t1.getId()) && tokenIds.contains(t2.getId())) {
+        if (inMethod(t1.getId(), t2.getId())) {
             addEdge(t1.getId(), t2.getId(), EdgeType.RETURNS_TO);
         }
     }
 
     @Override
     public void nextLexicalUse(Token t1, Token t2) {
-        if (tokenIds.contains(t1.getId()) && tokenIds.contains(t2.getId())) {
+        if (inMethod(t1.getId(), t2.getId())) {
             addEdge(t1.getId(), t2.getId(), EdgeType.NEXT_LEXICAL_USE);
         }
     }
 
     @Override
     public void assignedFrom(Token t1, NonTerminal t2) {
-        if (tokenIds.contains(t1.getId()) && tokenIds.contains(t2.getId())) {
+        if (inMethod(t1.getId(), t2.getId())) {
             addEdge(t1.getId(), t2.getId(), EdgeType.ASSIGNED_FROM);
         }
     }
@@ -162,7 +177,7 @@ public class ICLR20GreatVisitor implements Walker {
         tokens = new ArrayList<>();
         correctJson = new JsonObject();
         buggyJson = new JsonObject();
-        tokenIds = new ArrayList<>();
+        nodeIds.clear();
     }
 
     @Override
@@ -180,8 +195,7 @@ public class ICLR20GreatVisitor implements Walker {
             tokenIndex++;
         }
         if (!mutatableTokens.isEmpty()) {
-            Random randomizer = new Random();
-            Integer randomIndex = mutatableTokens.get(randomizer.nextInt(mutatableTokens.size()));
+            Integer randomIndex = mutatableTokens.get(random.nextInt(mutatableTokens.size()));
             JsonArray allTokens = tokens.getAsJsonArray();
             JsonElement token = allTokens.get(randomIndex);
             String binaryExpression = token.getAsString();
@@ -225,6 +239,11 @@ public class ICLR20GreatVisitor implements Walker {
         objToMutate.addProperty(property, value);
     }
 
+    // nodes that were not visited in this method may still carry ids from earlier ones
+    private boolean inMethod(int id1, int id2) {
+        return id1 >= 0 && id2 >= 0 && nodeIds.get(id1) && nodeIds.get(id2);
+    }
+
     private void addEdge(int idFrom, int idTo, EdgeType edgeType) {
         JsonArray edge = new JsonArray();
         edge.add(idFrom);
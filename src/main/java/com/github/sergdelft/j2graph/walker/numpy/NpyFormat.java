@@ -0,0 +1,77 @@
+package com.github.sergdelft.j2graph.walker.numpy;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+/**
+ * Encodes arrays in the NPY format (version 1.0): https://numpy.org/doc/stable/reference/generated/numpy.lib.format.html
+ * <p>
+ * The header is padded so that the data starts at a multiple of 64 bytes, as numpy
+ * itself does, so that the arrays can be memory-mapped. Data is C-ordered and little-endian.
+ */
+public class NpyFormat {
+
+    private static final byte[] MAGIC = {(byte) 0x93, 'N', 'U', 'M', 'P', 'Y', 1, 0};
+    private static final int ALIGNMENT = 64;
+
+    private NpyFormat() {}
+
+    public static byte[] int8(byte[] values, int length) {
+        ByteBuffer array = allocate("|i1", length, length);
+        array.put(values, 0, length);
+        return array.array();
+    }
+
+    public static byte[] int32(int[] values, int length) {
+        ByteBuffer array = allocate("<i4", 4 * length, length);
+        array.asIntBuffer().put(values, 0, length);
+        return array.array();
+    }
+
+    // a 2 x length array, with the first row followed by the second one
+    public static byte[] int32(int[] first, int[] second, int length) {
+        ByteBuffer array = allocate("<i4", 8 * length, 2, length);
+        array.asIntBuffer().put(first, 0, length).put(second, 0, length);
+        return array.array();
+    }
+
+    public static byte[] int64(long[] values, int length) {
+        ByteBuffer array = allocate("<i8", 8 * length, length);
+        array.asLongBuffer().put(values, 0, length);
+        return array.array();
+    }
+
+    // allocates header and data, and positions the buffer at the start of the data
+    private static ByteBuffer allocate(String descr, int dataLength, int... shape) {
+        byte[] header = header(descr, shape);
+        ByteBuffer array = ByteBuffer.allocate(header.length + dataLength).order(ByteOrder.LITTLE_ENDIAN);
+        array.put(header);
+        return array;
+    }
+
+    static byte[] header(String descr, int... shape) {
+        String dimensions = shape.length == 1
+                ? shape[0] + ","
+                : Arrays.stream(shape).mapToObj(Integer::toString).collect(Collectors.joining(", "));
+        String dictionary = "{'descr': '" + descr + "', 'fortran_order': False, 'shape': (" + dimensions + "), }";
+
+        // magic, header length (uint16), dictionary, spaces, newline
+        int unpadded = MAGIC.length + 2 + dictionary.length() + 1;
+        int padding = (ALIGNMENT - unpadded % ALIGNMENT) % ALIGNMENT;
+
+        byte[] header = new byte[unpadded + padding];
+        System.arraycopy(MAGIC, 0, header, 0, MAGIC.length);
+        int length = header.length - MAGIC.length - 2;
+        header[MAGIC.length] = (byte) length;
+        header[MAGIC.length + 1] = (byte) (length >>> 8);
+
+        byte[] text = dictionary.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(text, 0, header, MAGIC.length + 2, text.length);
+        Arrays.fill(header, MAGIC.length + 2 + text.length, header.length - 1, (byte) ' ');
+        header[header.length - 1] = '\n';
+        return header;
+    }
+}
@@ -0,0 +1,144 @@
+package com.github.sergdelft.j2graph.walker.numpy;
+
+import com.github.sergdelft.j2graph.graph.NonTerminal;
+import com.github.sergdelft.j2graph.walker.BufferingWalker;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.function.ToIntFunction;
+
+/**
+ * Writes the method graphs as NumPy arrays in COO form, for PyTorch Geometric style loaders.
+ * <p>
+ * Every shard holds the graphs of up to {@code graphsPerShard} methods, concatenated, in a
+ * directory (e.g., train-00000) with one npy file per array, so that every array can be
+ * memory-mapped (e.g., with numpy.load(file, mmap_mode='r'), which an npz archive does not allow):
+ * <ul>
+ *     <li>edge_index: int32, 2 x E, sources in the first row and targets in the second</li>
+ *     <li>edge_type: int8, E, see {@link com.github.sergdelft.j2graph.walker.EdgeKind}</li>
+ *     <li>node_label: int32, N, the label ids</li>
+ *     <li>node_kind: int8, N, see {@link com.github.sergdelft.j2graph.walker.NodeKind}</li>
+ *     <li>node_offsets, edge_offsets: int64, G + 1, where graph i spans [offsets[i], offsets[i + 1])</li>
+ * </ul>
+ * Node ids in edge_index are local to their graph, as given by {@link BufferingWalker}.
+ * A shard is kept in memory until it is complete, as the npy headers hold the array lengths.
+ */
+public class NpyGraphWriter extends BufferingWalker implements Closeable {
+
+    private final Path directory;
+    private final String prefix;
+    private final int graphsPerShard;
+    private final ToIntFunction<String> labelIds;
+
+    private int shard = 0;
+    private int graphs = 0;
+    private long[] nodeOffsets;
+    private long[] edgeOffsets;
+
+    private int nodes = 0;
+    private int[] nodeLabels = new int[1024];
+    private byte[] nodeKinds = new byte[1024];
+
+    private int edges = 0;
+    private int[] edgeSources = new int[1024];
+    private int[] edgeTargets = new int[1024];
+    private byte[] edgeTypes = new byte[1024];
+
+    /**
+     * @param labelIds maps node labels to ids (e.g., a vocabulary)
+     */
+    public NpyGraphWriter(Path directory, String prefix, int graphsPerShard, ToIntFunction<String> labelIds) throws IOException {
+        if (graphsPerShard < 1)
+            throw new IllegalArgumentException("shards must hold at least one graph: " + graphsPerShard);
+
+        this.directory = Files.createDirectories(directory);
+        this.prefix = prefix;
+        this.graphsPerShard = graphsPerShard;
+        this.labelIds = labelIds;
+        this.nodeOffsets = new long[graphsPerShard + 1];
+        this.edgeOffsets = new long[graphsPerShard + 1];
+    }
+
+    @Override
+    protected void writeMethod(String methodName, NonTerminal root) {
+        ensureNodeCapacity(nodes + nodeCount());
+        for (int id = 0; id < nodeCount(); id++) {
+            nodeLabels[nodes] = labelIds.applyAsInt(label(id));
+            nodeKinds[nodes] = (byte) nodeKind(id).getValue();
+            nodes++;
+        }
+
+        ensureEdgeCapacity(edges + edgeCount());
+        for (int edge = 0; edge < edgeCount(); edge++) {
+            edgeSources[edges] = edgeFrom(edge);
+            edgeTargets[edges] = edgeTo(edge);
+            edgeTypes[edges] = (byte) edgeKind(edge).getValue();
+            edges++;
+        }
+
+        graphs++;
+        nodeOffsets[graphs] = nodes;
+        edgeOffsets[graphs] = edges;
+
+        if (graphs == graphsPerShard) {
+            try {
+                writeShard();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    // number of shards written so far
+    public int getShardCount() {
+        return shard;
+    }
+
+    public Path shardDirectory(int shard) {
+        return directory.resolve(String.format("%s-%05d", prefix, shard));
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (graphs > 0)
+            writeShard();
+    }
+
+    private void writeShard() throws IOException {
+        Path shardDirectory = Files.createDirectories(shardDirectory(shard));
+        Files.write(shardDirectory.resolve("edge_index.npy"), NpyFormat.int32(edgeSources, edgeTargets, edges));
+        Files.write(shardDirectory.resolve("edge_type.npy"), NpyFormat.int8(edgeTypes, edges));
+        Files.write(shardDirectory.resolve("node_label.npy"), NpyFormat.int32(nodeLabels, nodes));
+        Files.write(shardDirectory.resolve("node_kind.npy"), NpyFormat.int8(nodeKinds, nodes));
+        Files.write(shardDirectory.resolve("node_offsets.npy"), NpyFormat.int64(nodeOffsets, graphs + 1));
+        Files.write(shardDirectory.resolve("edge_offsets.npy"), NpyFormat.int64(edgeOffsets, graphs + 1));
+
+        shard++;
+        graphs = 0;
+        nodes = 0;
+        edges = 0;
+    }
+
+    private void ensureNodeCapacity(int capacity) {
+        if (capacity <= nodeLabels.length)
+            return;
+
+        int length = Math.max(2 * nodeLabels.length, capacity);
+        nodeLabels = Arrays.copyOf(nodeLabels, length);
+        nodeKinds = Arrays.copyOf(nodeKinds, length);
+    }
+
+    private void ensureEdgeCapacity(int capacity) {
+        if (capacity <= edgeSources.length)
+            return;
+
+        int length = Math.max(2 * edgeSources.length, capacity);
+        edgeSources = Arrays.copyOf(edgeSources, length);
+        edgeTargets = Arrays.copyOf(edgeTargets, length);
+        edgeTypes = Arrays.copyOf(edgeTypes, length);
+    }
+}
@@ -0,0 +1,142 @@
+package com.github.sergdelft.j2graph.walker.tfrecord;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Encodes a tf.train.Example protocol buffer by hand:
+ * <pre>
+ * Example   { Features features = 1; }
+ * Features  { map&lt;string, Feature&gt; feature = 1; }
+ * Feature   { oneof { BytesList bytes_list = 1; Int64List int64_list = 3; } }
+ * BytesList { repeated bytes value = 1; }
+ * Int64List { repeated int64 value = 1 [packed = true]; }
+ * </pre>
+ * Features are added one by one, and {@link #finish()} returns the encoded example.
+ * The buffers are reused from example to example.
+ */
+class ExampleEncoder {
+
+    private static final int LENGTH_DELIMITED_1 = (1 << 3) | 2;
+    private static final int LENGTH_DELIMITED_2 = (2 << 3) | 2;
+    private static final int LENGTH_DELIMITED_3 = (3 << 3) | 2;
+
+    // the map entries, without the Example/Features envelope
+    private byte[] features = new byte[1 << 12];
+    private int featuresSize = 0;
+
+    private byte[] example = new byte[1 << 12];
+    private int exampleSize = 0;
+
+    void int64Feature(String key, int count, IntUnaryOperator values) {
+        int packedSize = 0;
+        for (int i = 0; i < count; i++)
+            packedSize += varintSize(values.applyAsInt(i));
+
+        int int64ListSize = count == 0 ? 0 : 1 + varintSize(packedSize) + packedSize;
+        int featureSize = 1 + varintSize(int64ListSize) + int64ListSize;
+
+        entryHeader(key, featureSize);
+        writeVarint(LENGTH_DELIMITED_3);
+        writeVarint(int64ListSize);
+        if (count > 0) {
+            writeVarint(LENGTH_DELIMITED_1);
+            writeVarint(packedSize);
+            for (int i = 0; i < count; i++)
+                writeVarint(values.applyAsInt(i));
+        }
+    }
+
+    void bytesFeature(String key, byte[][] values, int count) {
+        int bytesListSize = 0;
+        for (int i = 0; i < count; i++)
+            bytesListSize += 1 + varintSize(values[i].length) + values[i].length;
+
+        int featureSize = 1 + varintSize(bytesListSize) + bytesListSize;
+
+        entryHeader(key, featureSize);
+        writeVarint(LENGTH_DELIMITED_1);
+        writeVarint(bytesListSize);
+        for (int i = 0; i < count; i++) {
+            writeVarint(LENGTH_DELIMITED_1);
+            writeVarint(values[i].length);
+            writeBytes(values[i]);
+        }
+    }
+
+    void bytesFeature(String key, String value) {
+        bytesFeature(key, new byte[][]{value.getBytes(StandardCharsets.UTF_8)}, 1);
+    }
+
+    byte[] finish() {
+        int featuresMessageSize = featuresSize;
+        exampleSize = 0;
+        ensureExample(1 + varintSize(featuresMessageSize) + featuresMessageSize);
+        exampleSize = putVarint(example, exampleSize, LENGTH_DELIMITED_1);
+        exampleSize = putVarint(example, exampleSize, featuresMessageSize);
+        System.arraycopy(features, 0, example, exampleSize, featuresSize);
+        exampleSize += featuresSize;
+
+        featuresSize = 0;
+        return example;
+    }
+
+    // size of the example returned by the last finish()
+    int size() {
+        return exampleSize;
+    }
+
+    private void entryHeader(String key, int featureSize) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int entrySize = 1 + varintSize(keyBytes.length) + keyBytes.length + 1 + varintSize(featureSize) + featureSize;
+
+        writeVarint(LENGTH_DELIMITED_1);
+        writeVarint(entrySize);
+        writeVarint(LENGTH_DELIMITED_1);
+        writeVarint(keyBytes.length);
+        writeBytes(keyBytes);
+        writeVarint(LENGTH_DELIMITED_2);
+        writeVarint(featureSize);
+    }
+
+    private void writeVarint(long value) {
+        ensureFeatures(10);
+        featuresSize = putVarint(features, featuresSize, value);
+    }
+
+    private void writeBytes(byte[] bytes) {
+        ensureFeatures(bytes.length);
+        System.arraycopy(bytes, 0, features, featuresSize, bytes.length);
+        featuresSize += bytes.length;
+    }
+
+    private void ensureFeatures(int extra) {
+        if (featuresSize + extra > features.length)
+            features = Arrays.copyOf(features, Math.max(features.length * 2, featuresSize + extra));
+    }
+
+    private void ensureExample(int size) {
+        if (size > example.length)
+            example = new byte[Math.max(example.length * 2, size)];
+    }
+
+    // int64 values are encoded as 64-bit varints, so negative ints take 10 bytes
+    private static int putVarint(byte[] buffer, int position, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+        return position;
+    }
+
+    private static int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            size++;
+            value >>>= 7;
+        }
+        return size;
+    }
+}
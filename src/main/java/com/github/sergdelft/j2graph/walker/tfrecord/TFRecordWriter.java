@@ -0,0 +1,155 @@
+package com.github.sergdelft.j2graph.walker.tfrecord;
+
+import com.github.sergdelft.j2graph.graph.NonTerminal;
+import com.github.sergdelft.j2graph.output.ShardedOutput;
+import com.github.sergdelft.j2graph.vocabulary.BytePairEncoding;
+import com.github.sergdelft.j2graph.walker.BufferingWalker;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.function.ToIntFunction;
+import java.util.zip.CRC32C;
+
+/**
+ * Writes one TFRecord per method, with a tf.train.Example payload, straight from the walk.
+ * <p>
+ * Every record is framed as TensorFlow expects: length (uint64), masked CRC32C of the
+ * length, payload, masked CRC32C of the payload. The example has the features:
+ * <ul>
+ *     <li>class_name, method_name: bytes</li>
+ *     <li>node_kinds: int64, see {@link com.github.sergdelft.j2graph.walker.NodeKind}</li>
+ *     <li>node_labels: bytes, or node_label_ids: int64 when a label id function is given</li>
+ *     <li>node_subword_counts, node_subword_ids: int64, when a subword encoding is set: the number of
+ *     subwords of every label, and the subwords of all labels one after the other</li>
+ *     <li>edge_sources, edge_targets, edge_types: int64, see {@link com.github.sergdelft.j2graph.walker.EdgeKind}</li>
+ * </ul>
+ * Records go to rolling shards, see {@link ShardedOutput}, which lists the source files of each shard.
+ */
+public class TFRecordWriter extends BufferingWalker implements Closeable {
+
+    private static final int MASK_DELTA = 0xa282ead8;
+
+    private final ShardedOutput output;
+    private final ToIntFunction<String> labelIds;
+
+    private final ExampleEncoder encoder = new ExampleEncoder();
+    private final CRC32C crc = new CRC32C();
+    private final byte[] header = new byte[12];
+    private final byte[] footer = new byte[4];
+    private byte[][] labelBytes = new byte[256][];
+
+    private BytePairEncoding subwords;
+    private int[] subwordCounts = new int[256];
+    private int[] subwordIds = new int[1024];
+    private int subwordIdCount;
+    private final IntConsumer addSubwordId = this::addSubwordId;
+
+    public TFRecordWriter(ShardedOutput output) {
+        this(output, null);
+    }
+
+    /**
+     * @param labelIds maps node labels to ids (e.g., a vocabulary), so that labels are written as int64s
+     */
+    public TFRecordWriter(ShardedOutput output, ToIntFunction<String> labelIds) {
+        this.output = output;
+        this.labelIds = labelIds;
+    }
+
+    // also writes the labels as subwords (e.g., as trained by BpeTrainer)
+    public void setSubwords(BytePairEncoding subwords) {
+        this.subwords = subwords;
+    }
+
+    @Override
+    public void beginFile(Path file) {
+        output.setSource(file);
+    }
+
+    @Override
+    protected void writeMethod(String methodName, NonTerminal root) {
+        encoder.bytesFeature("class_name", getClassName());
+        encoder.bytesFeature("method_name", methodName);
+        encoder.int64Feature("node_kinds", nodeCount(), id -> nodeKind(id).getValue());
+
+        if (labelIds != null) {
+            encoder.int64Feature("node_label_ids", nodeCount(), id -> labelIds.applyAsInt(label(id)));
+        } else {
+            if (labelBytes.length < nodeCount())
+                labelBytes = new byte[Math.max(nodeCount(), labelBytes.length * 2)][];
+            for (int id = 0; id < nodeCount(); id++)
+                labelBytes[id] = label(id).getBytes(StandardCharsets.UTF_8);
+
+            encoder.bytesFeature("node_labels", labelBytes, nodeCount());
+            Arrays.fill(labelBytes, 0, nodeCount(), null);
+        }
+
+        if (subwords != null) {
+            if (subwordCounts.length < nodeCount())
+                subwordCounts = new int[Math.max(nodeCount(), subwordCounts.length * 2)];
+            subwordIdCount = 0;
+            for (int id = 0; id < nodeCount(); id++)
+                subwordCounts[id] = subwords.encode(label(id), addSubwordId);
+
+            encoder.int64Feature("node_subword_counts", nodeCount(), id -> subwordCounts[id]);
+            encoder.int64Feature("node_subword_ids", subwordIdCount, i -> subwordIds[i]);
+        }
+
+        encoder.int64Feature("edge_sources", edgeCount(), this::edgeFrom);
+        encoder.int64Feature("edge_targets", edgeCount(), this::edgeTo);
+        encoder.int64Feature("edge_types", edgeCount(), edge -> edgeKind(edge).getValue());
+
+        byte[] example = encoder.finish();
+        try {
+            writeRecord(example, encoder.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void addSubwordId(int id) {
+        if (subwordIdCount == subwordIds.length)
+            subwordIds = Arrays.copyOf(subwordIds, subwordIds.length * 2);
+        subwordIds[subwordIdCount++] = id;
+    }
+
+    private void writeRecord(byte[] payload, int length) throws IOException {
+        putLong(header, 0, length);
+        putInt(header, 8, maskedCrc(header, 0, 8));
+        putInt(footer, 0, maskedCrc(payload, 0, length));
+
+        OutputStream out = output.stream();
+        out.write(header);
+        out.write(payload, 0, length);
+        out.write(footer);
+        output.endRecord();
+    }
+
+    private int maskedCrc(byte[] bytes, int offset, int length) {
+        crc.reset();
+        crc.update(bytes, offset, length);
+        int value = (int) crc.getValue();
+        return ((value >>> 15) | (value << 17)) + MASK_DELTA;
+    }
+
+    private static void putLong(byte[] buffer, int offset, long value) {
+        for (int i = 0; i < 8; i++)
+            buffer[offset + i] = (byte) (value >>> (8 * i));
+    }
+
+    private static void putInt(byte[] buffer, int offset, int value) {
+        for (int i = 0; i < 4; i++)
+            buffer[offset + i] = (byte) (value >>> (8 * i));
+    }
+
+    @Override
+    public void close() throws IOException {
+        output.close();
+    }
+}
@@ -0,0 +1,110 @@
+package com.github.sergdelft.j2graph.iclr20great;
+
+import com.google.gson.JsonObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests that a resumed run skips the files committed before the last checkpoint,
+ * keeps the state of the splits, and only resumes with the same settings
+ */
+public class CheckpointTest {
+
+    @TempDir
+    Path directory;
+
+    private JsonObject settings(long seed) {
+        JsonObject settings = new JsonObject();
+        settings.addProperty("seed", seed);
+        return settings;
+    }
+
+    private JsonObject state(long filesCommitted) {
+        JsonObject state = new JsonObject();
+        state.addProperty("files_committed", filesCommitted);
+        return state;
+    }
+
+    @Test
+    void files_committed_after_the_last_checkpoint_are_not_done() throws IOException {
+        Checkpoint checkpoint = Checkpoint.start(directory, settings(42));
+        checkpoint.commit(Paths.get("corpus/A.java"));
+        checkpoint.commit(Paths.get("corpus/B.java"));
+        checkpoint.write(Map.of("train", state(2)));
+
+        // logged by a checkpoint that was never written (e.g., a crash)
+        Files.write(directory.resolve(Checkpoint.DONE_FILE), "corpus/C.java\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        Checkpoint resumed = Checkpoint.resume(directory, settings(42));
+        assertThat(resumed.isDone(Paths.get("corpus/A.java"))).isTrue();
+        assertThat(resumed.isDone(Paths.get("corpus/B.java"))).isTrue();
+        assertThat(resumed.isDone(Paths.get("corpus/C.java"))).isFalse();
+        assertThat(Files.readAllLines(directory.resolve(Checkpoint.DONE_FILE))).containsExactly("corpus/A.java", "corpus/B.java");
+    }
+
+    @Test
+    void splits_of_earlier_passes_keep_their_state() throws IOException {
+        Checkpoint checkpoint = Checkpoint.start(directory, settings(42));
+        checkpoint.write(Map.of("train", state(2)));
+        checkpoint.write(Map.of("dev", state(1)));
+
+        Checkpoint resumed = Checkpoint.resume(directory, settings(42));
+        assertThat(resumed.split("train")).isEqualTo(state(2));
+        assertThat(resumed.split("dev")).isEqualTo(state(1));
+        assertThat(resumed.split("eval")).isNull();
+    }
+
+    @Test
+    void vocabularies_of_earlier_checkpoints_are_deleted() throws IOException {
+        Checkpoint checkpoint = Checkpoint.start(directory, settings(42));
+        for (int i = 0; i < 2; i++) {
+            Path vocabulary = checkpoint.vocabularyFile("train");
+            Files.write(vocabulary, new byte[0]);
+
+            JsonObject state = state(i);
+            state.addProperty("vocabulary", vocabulary.getFileName().toString());
+            checkpoint.write(Map.of("train", state));
+        }
+
+        assertThat(Files.exists(directory.resolve("train.vocabulary-00001.bin"))).isFalse();
+        assertThat(Files.exists(directory.resolve("train.vocabulary-00002.bin"))).isTrue();
+    }
+
+    @Test
+    void new_runs_delete_what_earlier_ones_left() throws IOException {
+        Checkpoint interrupted = Checkpoint.start(directory, settings(42));
+        interrupted.commit(Paths.get("corpus/A.java"));
+        Path vocabulary = interrupted.vocabularyFile("train");
+        Files.write(vocabulary, new byte[0]);
+        Files.write(directory.resolve(vocabulary.getFileName() + ".sketch"), new byte[0]);
+
+        JsonObject state = state(1);
+        state.addProperty("vocabulary", vocabulary.getFileName().toString());
+        interrupted.write(Map.of("train", state));
+
+        Checkpoint.start(directory, settings(42));
+        assertThat(Files.exists(directory.resolve(Checkpoint.CHECKPOINT_FILE))).isFalse();
+        assertThat(Files.exists(directory.resolve(Checkpoint.DONE_FILE))).isFalse();
+        assertThat(Files.exists(vocabulary)).isFalse();
+        assertThat(Files.exists(directory.resolve(vocabulary.getFileName() + ".sketch"))).isFalse();
+    }
+
+    @Test
+    void runs_only_resume_with_the_same_settings() throws IOException {
+        assertThrows(IOException.class, () -> Checkpoint.resume(directory, settings(42)));
+
+        Checkpoint.start(directory, settings(42)).write(Map.of());
+        assertThrows(IllegalArgumentException.class, () -> Checkpoint.resume(directory, settings(7)));
+    }
+}
@@ -0,0 +1,62 @@
+package com.github.sergdelft.j2graph.iclr20great;
+
+import com.github.sergdelft.j2graph.iclr20great.ICLR20GreatDataGenerator.Split;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.EnumMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests that files are split in the given ratios,
+ * the same way every time, and by repository if asked
+ */
+public class HashSplitterTest {
+
+    private final Path corpus = Paths.get("corpus");
+
+    @Test
+    void files_are_split_in_the_given_ratios() {
+        HashSplitter splitter = new HashSplitter(corpus, 0.8, 0.1, false, 7);
+
+        Map<Split, Integer> counts = new EnumMap<>(Split.class);
+        for (int i = 0; i < 10_000; i++)
+            counts.merge(splitter.splitOf(corpus.resolve("repo" + (i % 100) + "/File" + i + ".java")), 1, Integer::sum);
+
+        assertThat(counts.get(Split.TRAIN)).isBetween(7700, 8300);
+        assertThat(counts.get(Split.DEV)).isBetween(850, 1150);
+        assertThat(counts.get(Split.EVAL)).isBetween(850, 1150);
+    }
+
+    @Test
+    void the_same_file_always_goes_to_the_same_split() {
+        HashSplitter splitter = new HashSplitter(corpus, 0.5, 0.25, false, 7);
+        HashSplitter again = new HashSplitter(corpus, 0.5, 0.25, false, 7);
+
+        for (int i = 0; i < 100; i++) {
+            Path file = corpus.resolve("repo/File" + i + ".java");
+            assertThat(again.splitOf(file)).isEqualTo(splitter.splitOf(file));
+        }
+    }
+
+    @Test
+    void files_of_a_repository_go_to_the_same_split() {
+        HashSplitter splitter = new HashSplitter(corpus, 0.5, 0.25, true, 7);
+
+        for (int repository = 0; repository < 20; repository++) {
+            Split split = splitter.splitOf(corpus.resolve("repo" + repository + "/A.java"));
+            for (int i = 0; i < 10; i++)
+                assertThat(splitter.splitOf(corpus.resolve("repo" + repository + "/src/main/B" + i + ".java"))).isEqualTo(split);
+        }
+    }
+
+    @Test
+    void ratios_must_fit() {
+        assertThrows(IllegalArgumentException.class, () -> new HashSplitter(corpus, 0.8, 0.3, false, 7));
+        assertThrows(IllegalArgumentException.class, () -> new HashSplitter(corpus, -0.1, 0.3, false, 7));
+    }
+}
@@ -0,0 +1,103 @@
+package com.github.sergdelft.j2graph.output;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests that the bytes handed to the I/O thread
+ * arrive in order, and that its errors are not lost
+ */
+public class AsyncOutputStreamTest {
+
+    @Test
+    void bytes_arrive_in_order() throws IOException {
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+
+        try (AsyncOutputStream out = new AsyncOutputStream(written, 16, 2)) {
+            for (int line = 0; line < 1000; line++) {
+                byte[] bytes = ("line " + line + "\n").getBytes();
+                out.write(bytes);
+                out.write(line % 256);
+                expected.write(bytes);
+                expected.write(line % 256);
+            }
+
+            byte[] large = new byte[100];
+            out.write(large);
+            expected.write(large);
+
+            out.flush();
+            assertThat(written.toByteArray()).isEqualTo(expected.toByteArray());
+        }
+    }
+
+    @Test
+    void errors_are_thrown_to_the_writer() {
+        OutputStream failing = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("disk full");
+            }
+        };
+
+        AsyncOutputStream out = new AsyncOutputStream(failing, 4, 1);
+        assertThrows(IOException.class, () -> {
+            out.write(new byte[10]);
+            out.flush();
+        });
+        assertThrows(IOException.class, out::close);
+    }
+
+    @Test
+    void unchecked_errors_are_thrown_to_the_writer() throws IOException {
+        OutputStream failing = new OutputStream() {
+            @Override
+            public void write(int b) {
+                throw new IllegalStateException("compressor failed");
+            }
+        };
+
+        AsyncOutputStream out = new AsyncOutputStream(failing, 4, 1);
+        IOException e = assertThrows(IOException.class, () -> {
+            for (int i = 0; i < 100; i++)
+                out.write(new byte[10]);
+            out.flush();
+        });
+        assertThat(e.getCause().getCause()).isInstanceOf(IllegalStateException.class);
+        assertThrows(IOException.class, out::close);
+        out.close();
+    }
+
+    @Test
+    void failed_streams_are_still_closed() throws IOException {
+        boolean[] closed = {false};
+        OutputStream failing = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("disk full");
+            }
+
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+
+        AsyncOutputStream out = new AsyncOutputStream(failing, 4, 1);
+        assertThrows(IOException.class, () -> {
+            out.write(new byte[10]);
+            out.flush();
+        });
+
+        assertThrows(IOException.class, out::close);
+        assertThat(closed[0]).isTrue();
+        out.close();
+    }
+}
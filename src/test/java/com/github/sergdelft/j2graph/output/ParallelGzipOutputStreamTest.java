@@ -0,0 +1,118 @@
+package com.github.sergdelft.j2graph.output;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests that the blocks compressed in parallel make a regular
+ * gzip file, in order, and that failures still close the file
+ */
+public class ParallelGzipOutputStreamTest {
+
+    @Test
+    void blocks_are_written_in_order() throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+
+        StringBuilder expected = new StringBuilder();
+        try (ParallelGzipOutputStream gzip = new ParallelGzipOutputStream(compressed, pool, 100, 2)) {
+            for (int line = 0; line < 1000; line++) {
+                String text = "line " + line + "\n";
+                expected.append(text);
+                gzip.write(text.getBytes());
+                gzip.flush();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        assertThat(gunzip(compressed.toByteArray())).isEqualTo(expected.toString());
+    }
+
+    @Test
+    void empty_output_is_still_gzip() throws IOException {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        new ParallelGzipOutputStream(compressed, pool).close();
+        pool.shutdown();
+
+        assertThat(gunzip(compressed.toByteArray())).isEqualTo("");
+    }
+
+    @Test
+    void failed_blocks_still_close_the_file() throws IOException {
+        boolean[] closed = {false};
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream() {
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+
+        ParallelGzipOutputStream gzip = new ParallelGzipOutputStream(compressed, new FailingPool(), 100, 2);
+        gzip.write(new byte[50]);
+        IOException e = assertThrows(IOException.class, gzip::close);
+        assertThat(e.getCause().getMessage()).isEqualTo("compressor failed");
+        assertThat(closed[0]).isTrue();
+    }
+
+    // runs every task on the calling thread, where it fails
+    private static class FailingPool extends AbstractExecutorService {
+        @Override
+        protected <T> RunnableFuture<T> newTaskFor(Callable<T> task) {
+            return new FutureTask<>(() -> {
+                throw new IOException("compressor failed");
+            });
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return List.of();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return true;
+        }
+    }
+
+    private String gunzip(byte[] bytes) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            return new String(in.readAllBytes());
+        }
+    }
+}
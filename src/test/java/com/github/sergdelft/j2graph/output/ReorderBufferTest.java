@@ -0,0 +1,98 @@
+package com.github.sergdelft.j2graph.output;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests that results completed by several workers, in any order,
+ * are committed in the order of their sequence numbers
+ */
+public class ReorderBufferTest {
+
+    @Test
+    void results_are_committed_in_sequence() throws InterruptedException {
+        List<Integer> committed = new ArrayList<>();
+        ReorderBuffer<Integer> buffer = new ReorderBuffer<>(8, committed::add);
+
+        ExecutorService workers = Executors.newFixedThreadPool(4);
+        try {
+            for (int i = 0; i < 1000; i++) {
+                long sequence = buffer.reserve();
+                int result = i;
+                workers.execute(() -> {
+                    if (ThreadLocalRandom.current().nextBoolean())
+                        Thread.yield();
+                    buffer.complete(sequence, result);
+                });
+            }
+            buffer.awaitCompletion();
+        } finally {
+            workers.shutdown();
+        }
+
+        assertThat(committed).hasSize(1000);
+        for (int i = 0; i < 1000; i++)
+            assertThat(committed.get(i)).isEqualTo(i);
+    }
+
+    @Test
+    void later_results_wait_for_earlier_ones() throws InterruptedException {
+        List<String> committed = new ArrayList<>();
+        ReorderBuffer<String> buffer = new ReorderBuffer<>(3, committed::add);
+
+        long first = buffer.reserve();
+        long second = buffer.reserve();
+        long third = buffer.reserve();
+
+        buffer.complete(third, "c");
+        buffer.complete(second, "b");
+        assertThat(committed).isEmpty();
+
+        buffer.complete(first, "a");
+        assertThat(committed).containsExactly("a", "b", "c");
+        assertThat(buffer.getCommitted()).isEqualTo(3);
+    }
+
+    @Test
+    void commit_errors_are_thrown_to_the_producer() throws InterruptedException {
+        ReorderBuffer<String> buffer = new ReorderBuffer<>(2, result -> {
+            throw new IllegalArgumentException("bad result");
+        });
+
+        buffer.complete(buffer.reserve(), "a");
+        assertThrows(IllegalStateException.class, buffer::awaitCompletion);
+        assertThrows(IllegalStateException.class, buffer::reserve);
+    }
+
+    @Test
+    void errors_do_not_leave_the_producer_waiting() throws InterruptedException {
+        ReorderBuffer<Integer> buffer = new ReorderBuffer<>(4, result -> {
+            if (result == 3)
+                throw new StackOverflowError();
+        });
+
+        ExecutorService workers = Executors.newFixedThreadPool(4);
+        try {
+            IllegalStateException e = assertThrows(IllegalStateException.class, () -> {
+                for (int i = 0; i < 100; i++) {
+                    long sequence = buffer.reserve();
+                    int result = i;
+                    workers.execute(() -> buffer.complete(sequence, result));
+                }
+                buffer.awaitCompletion();
+            });
+            assertThat(e.getCause()).isInstanceOf(StackOverflowError.class);
+            assertThat(buffer.getCommitted()).isEqualTo(4);
+        } finally {
+            workers.shutdown();
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.github.sergdelft.j2graph.output;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.zip.CRC32C;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests the rolling of the shards, the manifest
+ * that describes them, and going on from a saved state
+ */
+public class ShardedOutputTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void shards_roll_at_the_record_limit() throws IOException {
+        try (ShardedOutput output = new ShardedOutput(directory, "train", ".txt", 2, Long.MAX_VALUE)) {
+            Writer writer = output.writer();
+            for (int record = 0; record < 5; record++) {
+                output.setSource(Paths.get("F" + record / 2 + ".java"));
+                writer.write("record " + record + "\n");
+                output.endRecord();
+            }
+        }
+
+        assertThat(Files.readAllLines(directory.resolve("train-00000.txt"))).containsExactly("record 0", "record 1");
+        assertThat(Files.readAllLines(directory.resolve("train-00002.txt"))).containsExactly("record 4");
+        assertThat(Files.exists(directory.resolve("train-00003.txt"))).isFalse();
+    }
+
+    @Test
+    void shards_roll_at_the_byte_limit() throws IOException {
+        try (ShardedOutput output = new ShardedOutput(directory, "train", ".bin", Long.MAX_VALUE, 10)) {
+            for (int record = 0; record < 3; record++) {
+                output.stream().write(new byte[8]);
+                output.endRecord();
+            }
+            assertThat(output.getShardCount()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void the_byte_limit_counts_the_bytes_before_the_encoding() throws IOException {
+        int record = 100;
+        int limit = 1000;
+        try (ShardedOutput output = new ShardedOutput(directory, "train", ".bin.gz", Long.MAX_VALUE, limit,
+                file -> new AsyncOutputStream(new GZIPOutputStream(file), 64, 2))) {
+            for (int i = 0; i < 35; i++) {
+                output.stream().write(new byte[record]);
+                output.endRecord();
+            }
+            assertThat(output.getShardCount()).isEqualTo(4);
+        }
+
+        // the shards but the last reach the limit, and go over it by at most their last record
+        for (int shard = 0; shard < 4; shard++) {
+            long bytes;
+            try (InputStream in = new GZIPInputStream(Files.newInputStream(directory.resolve(String.format("train-%05d.bin.gz", shard))))) {
+                bytes = in.readAllBytes().length;
+            }
+            assertThat(bytes).isLessThan(limit + record);
+            if (shard < 3)
+                assertThat(bytes).isGreaterThanOrEqualTo(limit);
+        }
+    }
+
+    @Test
+    void manifest() throws IOException {
+        try (ShardedOutput output = new ShardedOutput(directory, "train", ".txt", 2, Long.MAX_VALUE)) {
+            Writer writer = output.writer();
+            for (int record = 0; record < 3; record++) {
+                output.setSource(Paths.get("F" + record + ".java"));
+                output.companion(".strings.txt").write('s');
+                writer.write("record " + record + "\n");
+                output.endRecord();
+            }
+        }
+
+        JsonObject manifest = JsonParser.parseString(new String(Files.readAllBytes(directory.resolve("train.manifest.json")),
+                StandardCharsets.UTF_8)).getAsJsonObject();
+        JsonArray shards = manifest.getAsJsonArray("shards");
+        assertThat(shards.size()).isEqualTo(2);
+
+        JsonObject first = shards.get(0).getAsJsonObject();
+        byte[] bytes = Files.readAllBytes(directory.resolve("train-00000.txt"));
+        assertThat(first.get("file").getAsString()).isEqualTo("train-00000.txt");
+        assertThat(first.get("samples").getAsLong()).isEqualTo(2);
+        assertThat(first.get("bytes").getAsLong()).isEqualTo(bytes.length);
+        assertThat(first.get("crc32c").getAsString()).isEqualTo(crc32c(bytes));
+        assertThat(first.getAsJsonArray("sources").toString()).isEqualTo("[\"F0.java\",\"F1.java\"]");
+
+        JsonObject companion = first.getAsJsonArray("companions").get(0).getAsJsonObject();
+        assertThat(companion.get("file").getAsString()).isEqualTo("train-00000.strings.txt");
+        assertThat(companion.get("bytes").getAsLong()).isEqualTo(2);
+    }
+
+    @Test
+    void restored_outputs_go_on_after_the_saved_shards() throws IOException {
+        StringWriter state = new StringWriter();
+        ShardedOutput first = new ShardedOutput(directory, "train", ".txt", 2, Long.MAX_VALUE);
+        for (int record = 0; record < 3; record++) {
+            first.companion(".strings.txt").write('s');
+            first.writer().write("record " + record + "\n");
+            first.endRecord();
+        }
+        first.writeState(new JsonWriter(state));
+
+        // records written after the state was saved, and never closed (e.g., a crash)
+        first.writer().write("lost\n");
+        first.endRecord();
+        first.companion(".strings.txt").write('s');
+        assertThat(Files.exists(directory.resolve("train-00002.strings.txt"))).isTrue();
+
+        try (ShardedOutput restored = new ShardedOutput(directory, "train", ".txt", 2, Long.MAX_VALUE)) {
+            restored.restore(JsonParser.parseString(state.toString()).getAsJsonArray());
+            assertThat(Files.exists(directory.resolve("train-00002.strings.txt"))).isFalse();
+
+            restored.writer().write("record 3\n");
+            restored.endRecord();
+        }
+
+        assertThat(Files.readAllLines(directory.resolve("train-00001.txt"))).containsExactly("record 2");
+        assertThat(Files.readAllLines(directory.resolve("train-00002.txt"))).containsExactly("record 3");
+
+        JsonArray shards = JsonParser.parseString(new String(Files.readAllBytes(directory.resolve("train.manifest.json")),
+                StandardCharsets.UTF_8)).getAsJsonObject().getAsJsonArray("shards");
+        assertThat(shards.size()).isEqualTo(3);
+        assertThat(shards.get(1).getAsJsonObject().getAsJsonArray("companions").get(0).getAsJsonObject()
+                .get("file").getAsString()).isEqualTo("train-00001.strings.txt");
+        assertThat(shards.get(2).getAsJsonObject().get("crc32c").getAsString())
+                .isEqualTo(crc32c(Files.readAllBytes(directory.resolve("train-00002.txt"))));
+    }
+
+    @Test
+    void new_outputs_delete_the_files_of_earlier_ones() throws IOException {
+        ShardedOutput interrupted = new ShardedOutput(directory, "train", ".txt", 1, Long.MAX_VALUE);
+        for (int record = 0; record < 3; record++) {
+            interrupted.companion(".strings.txt").write('s');
+            interrupted.writer().write("record " + record + "\n");
+            interrupted.endRecord();
+        }
+        Files.write(directory.resolve("train.manifest.json"), new byte[0]);
+        Files.write(directory.resolve("dev-00000.txt"), new byte[0]);
+
+        try (ShardedOutput output = new ShardedOutput(directory, "train", ".txt", 1, Long.MAX_VALUE)) {
+            output.deleteEarlierFiles();
+            assertThat(Files.exists(directory.resolve("train.manifest.json"))).isFalse();
+
+            output.writer().write("record 0\n");
+            output.endRecord();
+        }
+
+        assertThat(Files.exists(directory.resolve("train-00000.txt"))).isTrue();
+        assertThat(Files.exists(directory.resolve("train-00000.strings.txt"))).isFalse();
+        assertThat(Files.exists(directory.resolve("train-00001.txt"))).isFalse();
+        assertThat(Files.exists(directory.resolve("train-00002.strings.txt"))).isFalse();
+        assertThat(Files.exists(directory.resolve("dev-00000.txt"))).isTrue();
+    }
+
+    @Test
+    void restoring_checks_the_saved_shards() throws IOException {
+        StringWriter state = new StringWriter();
+        try (ShardedOutput first = new ShardedOutput(directory, "train", ".txt", 2, Long.MAX_VALUE)) {
+            first.writer().write("record 0\n");
+            first.endRecord();
+            first.writeState(new JsonWriter(state));
+        }
+        Files.write(directory.resolve("train-00000.txt"), new byte[3]);
+
+        ShardedOutput restored = new ShardedOutput(directory, "train", ".txt", 2, Long.MAX_VALUE);
+        assertThrows(IOException.class, () -> restored.restore(JsonParser.parseString(state.toString()).getAsJsonArray()));
+    }
+
+    private String crc32c(byte[] bytes) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes);
+        return String.format("%08x", crc.getValue());
+    }
+}
@@ -0,0 +1,68 @@
+package com.github.sergdelft.j2graph.vocabulary;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests the training of a byte-pair encoding, the encoding of words
+ * into subwords, and the reading back of a written encoding
+ */
+public class BytePairEncodingTest {
+
+    private BytePairEncoding train(int merges, long minPairCount) {
+        BpeTrainer trainer = new BpeTrainer();
+        trainer.add("low", 5);
+        trainer.add("lower", 2);
+        trainer.add("newest", 6);
+        trainer.add("widest", 3);
+        return trainer.train(merges, minPairCount);
+    }
+
+    @Test
+    void most_frequent_pairs_are_merged_first() {
+        BytePairEncoding bpe = train(4, 1);
+
+        // <unk>, the 10 characters, and then the merges
+        assertThat(bpe.size()).isEqualTo(15);
+        assertThat(bpe.subword(11)).isEqualTo("es");
+        assertThat(bpe.subword(12)).isEqualTo("est");
+        assertThat(bpe.subword(13)).isEqualTo("lo");
+        assertThat(bpe.subword(14)).isEqualTo("low");
+
+        assertThat(bpe.split("lowest")).containsExactly("low", "est");
+        assertThat(bpe.split("slow")).containsExactly("s", "low");
+        assertThat(bpe.encode("lowest")).containsExactly(14, 12);
+    }
+
+    @Test
+    void unseen_characters_are_unknown() {
+        BytePairEncoding bpe = train(4, 1);
+
+        assertThat(bpe.split("low?")).containsExactly("low", BytePairEncoding.UNKNOWN_SUBWORD);
+        assertThat(bpe.encode("")).isEmpty();
+    }
+
+    @Test
+    void training_stops_at_the_min_pair_count() {
+        // es and est occur 9 times, lo and low 7 times, and the next pairs 6 times
+        assertThat(train(100, 7).size()).isEqualTo(15);
+        assertThat(train(0, 1).size()).isEqualTo(11);
+    }
+
+    @Test
+    void written_encodings_read_back_the_same() throws IOException {
+        BytePairEncoding bpe = train(100, 1);
+        StringWriter out = new StringWriter();
+        bpe.write(out);
+
+        BytePairEncoding read = BytePairEncoding.read(new StringReader(out.toString()));
+        assertThat(read.size()).isEqualTo(bpe.size());
+        for (String word : new String[] {"lowest", "newer", "wide", "tallest"})
+            assertThat(read.encode(word)).isEqualTo(bpe.encode(word));
+    }
+}
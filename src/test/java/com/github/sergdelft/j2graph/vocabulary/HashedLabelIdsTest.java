@@ -0,0 +1,50 @@
+package com.github.sergdelft.j2graph.vocabulary;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests that hashed label ids only depend on the seed and the
+ * number of buckets, and the statistics of their collisions
+ */
+public class HashedLabelIdsTest {
+
+    @Test
+    void ids_only_depend_on_the_seed_and_the_buckets() {
+        List<String> labels = new ArrayList<>();
+        for (int i = 0; i < 1000; i++)
+            labels.add("label" + i);
+
+        HashedLabelIds ids = new HashedLabelIds(1000, 1);
+        HashedLabelIds same = new HashedLabelIds(1000, 1);
+        HashedLabelIds otherSeed = new HashedLabelIds(1000, 2);
+
+        int differ = 0;
+        for (String label : labels) {
+            assertThat(ids.applyAsInt(label)).isEqualTo(same.applyAsInt(label));
+            assertThat(ids.applyAsInt(label)).isBetween(0, 999);
+            if (ids.applyAsInt(label) != otherSeed.applyAsInt(label))
+                differ++;
+        }
+        assertThat(differ).isGreaterThan(900);
+    }
+
+    @Test
+    void collisions_of_the_labels() {
+        HashedLabelIds.Collisions none = new HashedLabelIds(1 << 20, 0).collisions(Arrays.asList("i", "j", "i"));
+        assertThat(none.getLabels()).isEqualTo(2);
+        assertThat(none.getUsedBuckets()).isEqualTo(2);
+        assertThat(none.getCollidingLabels()).isEqualTo(0);
+
+        HashedLabelIds.Collisions all = new HashedLabelIds(1, 0).collisions(Arrays.asList("i", "j", "k"));
+        assertThat(all.getUsedBuckets()).isEqualTo(1);
+        assertThat(all.getCollidingLabels()).isEqualTo(3);
+        assertThat(all.getLargestBucket()).isEqualTo(3);
+        assertThat(all.getExpectedCollisionRate()).isEqualTo(1.0);
+    }
+}
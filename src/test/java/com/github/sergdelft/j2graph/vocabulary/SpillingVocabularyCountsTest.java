@@ -0,0 +1,135 @@
+package com.github.sergdelft.j2graph.vocabulary;
+
+import com.github.sergdelft.j2graph.walker.NodeKind;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests that spilled runs merge to the same vocabulary as counting in memory,
+ * that the sketch drops words rarer than the min count (and no word that is not),
+ * that saved counts go on where they stopped, and that runs are deleted
+ */
+public class SpillingVocabularyCountsTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void spilled_runs_merge_to_the_counts_in_memory() throws IOException, InterruptedException {
+        VocabularyCounts inMemory = new VocabularyCounts();
+        for (int i = 0; i < 3 * 1000; i++) {
+            inMemory.add(NodeKind.TOKEN, "word" + (i % 1000 % 300));
+            inMemory.add(NodeKind.SYMBOL, "word" + (i % 1000 % 7));
+        }
+
+        // a run per word, more runs than are merged at once
+        try (SpillingVocabularyCounts spilling = new SpillingVocabularyCounts(dir, 1, 0, 1)) {
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < 3; t++) {
+                threads.add(new Thread(() -> {
+                    for (int i = 0; i < 1000; i++) {
+                        spilling.add(NodeKind.TOKEN, "word" + (i % 300));
+                        spilling.add(NodeKind.SYMBOL, "word" + (i % 7));
+                    }
+                }));
+            }
+            for (Thread thread : threads)
+                thread.start();
+            for (Thread thread : threads)
+                thread.join();
+
+            assertThat(spilling.runs()).isGreaterThan(SpillingVocabularyCounts.MAX_MERGE_FAN_IN);
+
+            Map<NodeKind, List<Map.Entry<String, Long>>> top = spilling.top(1, 100);
+            assertThat(top.get(NodeKind.TOKEN)).isEqualTo(inMemory.top(NodeKind.TOKEN, 1, 100));
+            assertThat(top.get(NodeKind.SYMBOL)).isEqualTo(inMemory.top(NodeKind.SYMBOL, 1, 100));
+            assertThat(top.get(NodeKind.VOCABULARY)).isEmpty();
+        }
+    }
+
+    @Test
+    void words_rarer_than_the_min_count_are_not_buffered() throws IOException {
+        try (SpillingVocabularyCounts spilling = new SpillingVocabularyCounts(dir, 1 << 20, 1 << 16, 3)) {
+            for (int i = 0; i < 1000; i++)
+                spilling.add(NodeKind.TOKEN, "once" + i);
+            for (int i = 0; i < 2; i++)
+                spilling.add(NodeKind.TOKEN, "twice");
+            for (int i = 0; i < 5; i++)
+                spilling.add(NodeKind.TOKEN, "often");
+            for (int i = 0; i < 3; i++)
+                spilling.add(NodeKind.SYMBOL, "twice");
+
+            Map<NodeKind, List<Map.Entry<String, Long>>> top = spilling.top(1, 100);
+            assertThat(top.get(NodeKind.TOKEN)).containsExactly(Map.entry("often", 5L));
+            assertThat(top.get(NodeKind.SYMBOL)).containsExactly(Map.entry("twice", 3L));
+        }
+    }
+
+    @Test
+    void words_pushed_up_by_others_keep_their_first_occurrences() throws IOException {
+        // one counter per row: all words share their counters
+        try (SpillingVocabularyCounts spilling = new SpillingVocabularyCounts(dir, 1 << 20, 1, 3)) {
+            spilling.add(NodeKind.TOKEN, "first");
+            spilling.add(NodeKind.TOKEN, "first");
+            spilling.add(NodeKind.TOKEN, "other");
+            spilling.add(NodeKind.TOKEN, "first");
+
+            Map<NodeKind, List<Map.Entry<String, Long>>> top = spilling.top(3, 100);
+            assertThat(top.get(NodeKind.TOKEN)).containsExactlyInAnyOrder(Map.entry("first", 3L), Map.entry("other", 3L));
+        }
+    }
+
+    @Test
+    void saved_counts_go_on_where_they_stopped() throws IOException {
+        Path saved = dir.resolve("vocabulary.bin");
+        try (SpillingVocabularyCounts spilling = new SpillingVocabularyCounts(dir, 16, 1 << 16, 3)) {
+            for (int i = 0; i < 2; i++) {
+                spilling.add(NodeKind.TOKEN, "often");
+                spilling.add(NodeKind.TOKEN, "later");
+            }
+            spilling.add(NodeKind.TOKEN, "often");
+            spilling.save(saved);
+            assertThat(spilling.runs()).isEqualTo(1);
+        }
+
+        // the sketch remembers "later", so that its next occurrence reaches the min count
+        try (SpillingVocabularyCounts resumed = new SpillingVocabularyCounts(dir, 16, 1 << 16, 3)) {
+            resumed.load(saved);
+            resumed.add(NodeKind.TOKEN, "often");
+            resumed.add(NodeKind.TOKEN, "later");
+
+            assertThat(resumed.top(1, 100).get(NodeKind.TOKEN))
+                    .containsExactly(Map.entry("often", 4L), Map.entry("later", 3L));
+        }
+
+        try (ShardedVocabularyCounts sharded = new ShardedVocabularyCounts()) {
+            sharded.add(NodeKind.SYMBOL, "a");
+            sharded.save(saved);
+            sharded.load(saved);
+            assertThat(sharded.top(1, 100).get(NodeKind.SYMBOL)).containsExactly(Map.entry("a", 2L));
+        }
+    }
+
+    @Test
+    void runs_are_deleted_on_close() throws IOException {
+        SpillingVocabularyCounts spilling = new SpillingVocabularyCounts(dir, 1, 0, 1);
+        spilling.add(NodeKind.TOKEN, "a");
+        spilling.add(NodeKind.TOKEN, "b");
+        assertThat(spilling.runs()).isEqualTo(2);
+
+        spilling.close();
+        try (Stream<Path> files = Files.list(dir)) {
+            assertThat(files.count()).isEqualTo(0);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.github.sergdelft.j2graph.vocabulary;
+
+import com.github.sergdelft.j2graph.walker.NodeKind;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests the counting of words per kind of node, the merging of
+ * shards counted by several threads, and the min-count and top-k cut-offs
+ */
+public class VocabularyCountsTest {
+
+    @Test
+    void kinds_are_counted_apart() {
+        VocabularyCounts counts = new VocabularyCounts();
+        counts.add(NodeKind.TOKEN, "i");
+        counts.add(NodeKind.TOKEN, "i");
+        counts.add(NodeKind.SYMBOL, "i");
+
+        assertThat(counts.count(NodeKind.TOKEN, "i")).isEqualTo(2);
+        assertThat(counts.count(NodeKind.SYMBOL, "i")).isEqualTo(1);
+        assertThat(counts.count(NodeKind.NON_TERMINAL, "i")).isEqualTo(0);
+        assertThat(counts.size(NodeKind.TOKEN)).isEqualTo(1);
+    }
+
+    @Test
+    void shards_of_all_threads_are_merged() throws InterruptedException {
+        ShardedVocabularyCounts sharded = new ShardedVocabularyCounts();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 1000; i++)
+                    sharded.shard().add(NodeKind.TOKEN, "word" + (i % 10));
+            }));
+        }
+        for (Thread thread : threads)
+            thread.start();
+        for (Thread thread : threads)
+            thread.join();
+
+        VocabularyCounts merged = sharded.merge();
+        assertThat(merged.size(NodeKind.TOKEN)).isEqualTo(10);
+        for (int i = 0; i < 10; i++)
+            assertThat(merged.count(NodeKind.TOKEN, "word" + i)).isEqualTo(400);
+    }
+
+    @Test
+    void most_frequent_words_above_the_min_count() {
+        VocabularyCounts counts = new VocabularyCounts();
+        counts.add(NodeKind.TOKEN, "rare", 1);
+        counts.add(NodeKind.TOKEN, "b", 5);
+        counts.add(NodeKind.TOKEN, "a", 5);
+        counts.add(NodeKind.TOKEN, "most", 9);
+        counts.add(NodeKind.TOKEN, "least", 2);
+
+        List<Map.Entry<String, Long>> top = counts.top(NodeKind.TOKEN, 2, 3);
+        assertThat(top).containsExactly(Map.entry("most", 9L), Map.entry("a", 5L), Map.entry("b", 5L));
+        assertThat(counts.top(NodeKind.TOKEN, 2, 10)).hasSize(4);
+        assertThat(counts.top(NodeKind.TOKEN, 1, 0)).isEmpty();
+    }
+
+    @Test
+    void one_word_per_line() throws IOException {
+        VocabularyCounts counts = new VocabularyCounts();
+        counts.add(NodeKind.TOKEN, "\"a\tb\"", 3);
+        counts.add(NodeKind.TOKEN, "x", 2);
+
+        StringWriter out = new StringWriter();
+        counts.write(NodeKind.TOKEN, out, 1, 10);
+
+        assertThat(out.toString()).isEqualTo("\"a\\tb\"\t3\nx\t2\n");
+    }
+}
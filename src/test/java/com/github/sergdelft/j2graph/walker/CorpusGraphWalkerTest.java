@@ -0,0 +1,98 @@
+package com.github.sergdelft.j2graph.walker;
+
+import com.github.sergdelft.j2graph.TestBase;
+import com.github.sergdelft.j2graph.TestWalker;
+import com.github.sergdelft.j2graph.graph.ClassGraph;
+import com.github.sergdelft.j2graph.graph.NonTerminal;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests that exercise the file and batch
+ * events of the corpus walker
+ */
+public class CorpusGraphWalkerTest extends TestBase {
+
+    private final ClassGraph returnsTo = run("edge/ReturnsTo.java");
+    private final ClassGraph vocabulary = run("node/Vocabulary.java");
+
+    @Test
+    void files_and_batches_wrap_the_class_events() {
+        List<String> events = new ArrayList<>();
+        CorpusGraphWalker corpus = new CorpusGraphWalker(new EventRecorder(events), 2);
+
+        corpus.accept(Paths.get("a.java"), returnsTo);
+        corpus.accept(Paths.get("b.java"), null);
+        corpus.accept(Paths.get("c.java"), vocabulary);
+        corpus.end();
+
+        assertThat(events).containsExactly(
+                "beginBatch 0",
+                "beginFile a.java", "class E", "method m1/0", "method m2/0", "end", "endFile a.java",
+                "beginFile b.java", "endFile b.java",
+                "endBatch 0",
+                "beginBatch 1",
+                "beginFile c.java", "class Vocabulary", "method m1/0", "end", "endFile c.java",
+                "endBatch 1");
+    }
+
+    @Test
+    void no_empty_batch_at_the_end() {
+        List<String> events = new ArrayList<>();
+        CorpusGraphWalker corpus = new CorpusGraphWalker(new EventRecorder(events), 1);
+
+        corpus.accept(Paths.get("a.java"), returnsTo);
+        corpus.end();
+
+        assertThat(events).endsWith("endFile a.java", "endBatch 0");
+    }
+
+    private static class EventRecorder extends TestWalker implements CorpusWalker {
+        private final List<String> events;
+
+        EventRecorder(List<String> events) {
+            this.events = events;
+        }
+
+        @Override
+        public void className(String className) {
+            events.add("class " + className);
+        }
+
+        @Override
+        public void method(String methodName, NonTerminal root) {
+            events.add("method " + methodName);
+        }
+
+        @Override
+        public void end() {
+            events.add("end");
+        }
+
+        @Override
+        public void beginBatch(int batch) {
+            events.add("beginBatch " + batch);
+        }
+
+        @Override
+        public void endBatch(int batch) {
+            events.add("endBatch " + batch);
+        }
+
+        @Override
+        public void beginFile(Path file) {
+            events.add("beginFile " + file);
+        }
+
+        @Override
+        public void endFile(Path file) {
+            events.add("endFile " + file);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.github.sergdelft.j2graph.walker.arrow;
+
+import com.github.sergdelft.j2graph.TestBase;
+import com.github.sergdelft.j2graph.graph.ClassGraph;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests the layout of the Arrow files:
+ * magic, footer, and one block per record batch
+ */
+public class ArrowGraphWriterTest extends TestBase {
+
+    private final ClassGraph graph = run("representation/Loop.java");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void one_graph_row_per_method() throws IOException {
+        try (ArrowGraphWriter writer = new ArrowGraphWriter(directory, 1)) {
+            out.accept(graph, writer);
+        }
+
+        assertThat(recordBatches(directory.resolve("graphs.arrow"))).isEqualTo(2);
+        assertThat(recordBatches(directory.resolve("labels.arrow"))).isGreaterThan(2);
+    }
+
+    @Test
+    void batches_are_bounded_by_rows() throws IOException {
+        try (ArrowGraphWriter writer = new ArrowGraphWriter(directory, 1000)) {
+            out.accept(graph, writer);
+        }
+
+        assertThat(recordBatches(directory.resolve("graphs.arrow"))).isEqualTo(1);
+        assertThat(recordBatches(directory.resolve("nodes.arrow"))).isEqualTo(1);
+        assertThat(recordBatches(directory.resolve("edges.arrow"))).isEqualTo(1);
+    }
+
+    // reads the number of record batches from the footer, checking the magic and the continuation markers
+    private int recordBatches(Path file) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+        assertThat(new String(data.array(), 0, 6, StandardCharsets.US_ASCII)).isEqualTo("ARROW1");
+        assertThat(new String(data.array(), data.limit() - 6, 6, StandardCharsets.US_ASCII)).isEqualTo("ARROW1");
+
+        int footerLength = data.getInt(data.limit() - 10);
+        int footer = data.limit() - 10 - footerLength;
+        assertThat(data.getLong(footer - 8)).isEqualTo(0xFFFFFFFFL);
+
+        // footer table, its vtable, and the record batches vector (slot 3)
+        int table = footer + data.getInt(footer);
+        int vtable = table - data.getInt(table);
+        int field = data.getShort(vtable + 4 + 2 * 3);
+        int vector = table + field + data.getInt(table + field);
+
+        int batches = data.getInt(vector);
+        for (int batch = 0; batch < batches; batch++) {
+            long offset = data.getLong(vector + 4 + 24 * batch);
+            assertThat(data.getInt((int) offset)).isEqualTo(0xFFFFFFFF);
+        }
+        return batches;
+    }
+}
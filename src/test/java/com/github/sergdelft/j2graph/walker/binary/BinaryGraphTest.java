@@ -0,0 +1,125 @@
+package com.github.sergdelft.j2graph.walker.binary;
+
+import com.github.sergdelft.j2graph.TestBase;
+import com.github.sergdelft.j2graph.graph.ClassGraph;
+import com.github.sergdelft.j2graph.walker.EdgeKind;
+import com.github.sergdelft.j2graph.walker.NodeKind;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests that graphs survive a round trip
+ * through the binary format
+ */
+public class BinaryGraphTest extends TestBase {
+
+    private final ClassGraph graph = run("representation/Loop.java");
+
+    @Test
+    void graphs_round_trip() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (BinaryGraphWriter writer = new BinaryGraphWriter(bytes)) {
+            out.accept(graph, writer);
+        }
+
+        BinaryGraphReader reader = new BinaryGraphReader(ByteBuffer.wrap(bytes.toByteArray()));
+        assertThat(reader.getGraphCount()).isEqualTo(2);
+
+        BinaryGraphReader.GraphView m1 = reader.graph(0);
+        assertThat(m1.getClassName()).isEqualTo("D");
+        assertThat(m1.getMethodName()).isEqualTo("m1/0");
+        assertThat(m1.getNodeCount()).isEqualTo(graph.getMethods().get(0).getTokens().size()
+                + graph.getMethods().get(0).getSymbols().size()
+                + graph.getMethods().get(0).getVocabulary().size()
+                + graph.getMethods().get(0).getNonTerminals().size());
+
+        List<String> tokens = new ArrayList<>();
+        m1.nodes((id, kind, label) -> {
+            if (kind == NodeKind.TOKEN)
+                tokens.add(reader.string(label));
+        });
+        assertThat(tokenSequence(graph.getMethods().get(0).getTokens(), tokens.toArray(new String[0]))).isTrue();
+
+        List<Integer> nextTokens = new ArrayList<>();
+        m1.edges((from, to, kind) -> {
+            if (kind == EdgeKind.NEXT_TOKEN)
+                nextTokens.add(to - from);
+        });
+        assertThat(nextTokens).hasSize(tokens.size() - 1);
+        assertThat(nextTokens).containsOnly(1);
+    }
+
+    @Test
+    void implicit_edges_decode_to_the_same_edges() throws IOException {
+        ByteArrayOutputStream explicit = new ByteArrayOutputStream();
+        try (BinaryGraphWriter writer = new BinaryGraphWriter(explicit)) {
+            out.accept(graph, writer);
+        }
+
+        ByteArrayOutputStream implicit = new ByteArrayOutputStream();
+        try (BinaryGraphWriter writer = new BinaryGraphWriter(implicit, true)) {
+            out.accept(graph, writer);
+        }
+
+        assertThat(edges(implicit.toByteArray())).isEqualTo(edges(explicit.toByteArray()));
+        assertThat(implicit.size()).isLessThan(explicit.size());
+    }
+
+    // all edges of all graphs, in the order the reader gives them
+    private List<String> edges(byte[] file) {
+        BinaryGraphReader reader = new BinaryGraphReader(ByteBuffer.wrap(file));
+        List<String> edges = new ArrayList<>();
+        for (int graph = 0; graph < reader.getGraphCount(); graph++) {
+            BinaryGraphReader.GraphView view = reader.graph(graph);
+            view.edges((from, to, kind) -> edges.add(from + " -> " + to + " " + kind));
+            edges.add("count " + view.getEdgeCount());
+        }
+        return edges;
+    }
+
+    @Test
+    void the_size_limit_counts_what_finishing_adds() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        long finishedSize;
+        try (BinaryGraphWriter writer = new BinaryGraphWriter(bytes)) {
+            out.accept(graph, writer);
+            finishedSize = writer.finishedSize();
+        }
+
+        assertThat(finishedSize).isEqualTo(bytes.size());
+    }
+
+    @Test
+    void graphs_over_the_size_limit_leave_the_file_as_it_was() throws IOException {
+        ByteArrayOutputStream whole = new ByteArrayOutputStream();
+        try (BinaryGraphWriter writer = new BinaryGraphWriter(whole)) {
+            out.accept(graph, writer);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (BinaryGraphWriter writer = new BinaryGraphWriter(bytes)) {
+            writer.maxFileSize = whole.size() - 1;
+            assertThrows(IllegalStateException.class, () -> out.accept(graph, writer));
+            assertThat(writer.getGraphCount()).isEqualTo(1);
+        }
+
+        assertThat(bytes.size()).isLessThanOrEqualTo(whole.size() - 1);
+        BinaryGraphReader reader = new BinaryGraphReader(ByteBuffer.wrap(bytes.toByteArray()));
+        assertThat(reader.getGraphCount()).isEqualTo(1);
+        assertThat(reader.graph(0).getMethodName()).isEqualTo("m1/0");
+    }
+
+    @Test
+    void rejects_other_files() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new BinaryGraphReader(ByteBuffer.wrap(new byte[64])));
+    }
+}
@@ -0,0 +1,53 @@
+package com.github.sergdelft.j2graph.walker.binary;
+
+import com.github.sergdelft.j2graph.TestBase;
+import com.github.sergdelft.j2graph.graph.ClassGraph;
+import com.github.sergdelft.j2graph.walker.CorpusGraphWalker;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests the random access to graphs
+ * in a sharded graph store
+ */
+public class GraphStoreTest extends TestBase {
+
+    private final ClassGraph loop = run("representation/Loop.java");
+    private final ClassGraph returnsTo = run("edge/ReturnsTo.java");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void graphs_by_ordinal_and_by_name() throws IOException {
+        // tiny shards, so that every graph ends up in its own shard
+        GraphStoreWriter writer = new GraphStoreWriter(directory, 1);
+        CorpusGraphWalker corpus = new CorpusGraphWalker(writer, 10);
+        corpus.accept(Paths.get("Loop.java"), loop);
+        corpus.accept(Paths.get("ReturnsTo.java"), returnsTo);
+        corpus.end();
+        writer.close();
+
+        GraphStore store = GraphStore.open(directory);
+        assertThat(store.getGraphCount()).isEqualTo(4L);
+        assertThat(store.graph(2).getClassName()).isEqualTo("E");
+        assertThat(store.graph(2).getMethodName()).isEqualTo("m1/0");
+
+        assertThat(store.ordinal(Paths.get("Loop.java"), "m2/0").getAsLong()).isEqualTo(1L);
+        assertThat(store.ordinal(Paths.get("ReturnsTo.java"), "m2/0").getAsLong()).isEqualTo(3L);
+        assertThat(store.graph(Paths.get("ReturnsTo.java"), "m3/0").isPresent()).isFalse();
+
+        // one names file for the whole store, next to the index and the shards
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files.filter(file -> file.getFileName().toString().endsWith(".names")).count()).isEqualTo(1);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.github.sergdelft.j2graph.walker.binary;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests that values read through small windows are the ones
+ * written, also when they cross the border of a window
+ */
+public class WindowedMappingTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void values_across_windows() throws IOException {
+        Path file = directory.resolve("values.bin");
+        try (CountingOutput out = new CountingOutput(Files.newOutputStream(file))) {
+            out.writeByte(7);
+            for (long i = 0; i < 100; i++) {
+                out.writeLong(i * 0x0101010101L);
+                out.writeInt((int) i);
+            }
+        }
+
+        // 16-byte windows, so that most values cross a border
+        WindowedMapping mapping = WindowedMapping.map(file, 4);
+        assertThat(mapping.size()).isEqualTo(1 + 100 * 12);
+        assertThat(mapping.get(0)).isEqualTo((byte) 7);
+        for (long i = 0; i < 100; i++) {
+            assertThat(mapping.getLong(1 + 12 * i)).isEqualTo(i * 0x0101010101L);
+            assertThat(mapping.getInt(1 + 12 * i + 8)).isEqualTo((int) i);
+        }
+    }
+}
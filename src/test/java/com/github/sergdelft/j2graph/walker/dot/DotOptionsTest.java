@@ -0,0 +1,60 @@
+package com.github.sergdelft.j2graph.walker.dot;
+
+import com.github.sergdelft.j2graph.TestBase;
+import com.github.sergdelft.j2graph.graph.ClassGraph;
+import com.github.sergdelft.j2graph.walker.EdgeKind;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests that exercise the options of the
+ * dot output for large classes
+ */
+public class DotOptionsTest extends TestBase {
+
+    private final ClassGraph graph = run("edge/ReturnsTo.java");
+
+    @Test
+    void one_cluster_per_method() {
+        String dot = dot(DotOptions.defaults().clusterPerMethod());
+
+        assertThat(dot).contains("subgraph cluster_1 {", "subgraph cluster_2 {");
+        assertThat(dot).doesNotContain("{\n\tC -> M");
+    }
+
+    @Test
+    void hiding_vocabulary_edges_hides_vocabulary_nodes() {
+        String dot = dot(DotOptions.defaults().without(EdgeKind.SUBTOKEN_OF));
+
+        assertThat(dot).doesNotContain("subtoken of", "[label=\"V:");
+        assertThat(dot).contains("next token", "occurence of");
+    }
+
+    @Test
+    void truncated_methods_get_a_marker() {
+        String dot = dot(DotOptions.defaults().maxNodesPerMethod(3));
+
+        assertThat(dot).contains("more nodes\",shape=plaintext]");
+
+        // every method keeps its first 3 nodes (tokens come first), and no edge points at a dropped one
+        for (String method : dot.split("// ------ begin method ")) {
+            if (method.startsWith("digraph"))
+                continue;
+            assertThat(DotVisitorTest.nodes(method).stream().filter(node -> node.startsWith("T") && !node.startsWith("TRUNC")))
+                    .hasSize(3);
+        }
+        Set<String> nodes = DotVisitorTest.nodes(dot);
+        for (String edge : DotVisitorTest.edges(dot))
+            assertThat(nodes).contains(edge.split(" -> "));
+    }
+
+    private String dot(DotOptions options) {
+        StringWriter writer = new StringWriter();
+        out.accept(graph, new DotVisitor(writer, options));
+        return writer.toString();
+    }
+}
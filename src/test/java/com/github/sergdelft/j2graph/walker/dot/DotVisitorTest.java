@@ -0,0 +1,154 @@
+package com.github.sergdelft.j2graph.walker.dot;
+
+import com.github.sergdelft.j2graph.graph.NonTerminal;
+import com.github.sergdelft.j2graph.graph.Symbol;
+import com.github.sergdelft.j2graph.graph.Token;
+import com.github.sergdelft.j2graph.graph.Vocabulary;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests that the streamed dot output is the same, byte for byte,
+ * as the one formatted with String.format, null names included,
+ * and which nodes and edges are kept by clusters and truncation
+ */
+public class DotVisitorTest {
+
+    private static final Pattern NODE = Pattern.compile("^\t(\\w+) \\[label=", Pattern.MULTILINE);
+    private static final Pattern EDGE = Pattern.compile("^\t(\\w+) -> (\\w+)", Pattern.MULTILINE);
+
+    @Test
+    void streamed_output_matches_the_formatted_one() {
+        NonTerminal root = new NonTerminal("MethodDeclaration");
+        root.setId(1);
+        NonTerminal call = new NonTerminal(null);
+        call.setId(2);
+        Token t1 = new Token("x");
+        t1.setId(3);
+        Token t2 = new Token(null);
+        t2.setId(4);
+        Symbol symbol = new Symbol("x");
+        symbol.setId(5);
+        Vocabulary word = new Vocabulary("x");
+        word.setId(6);
+
+        StringWriter out = new StringWriter();
+        DotVisitor dot = new DotVisitor(out);
+        dot.className(null);
+        dot.method("m", root);
+        dot.nonTerminal(root);
+        dot.nonTerminal(call);
+        dot.token(t1);
+        dot.token(t2);
+        dot.symbol(symbol);
+        dot.vocabulary(word);
+        dot.nextToken(t1, t2);
+        dot.child(root, call);
+        dot.child(call, t1);
+        dot.occurrenceOf(t1, symbol);
+        dot.subtokenOf(word, t1);
+        dot.returnsTo(call, t2);
+        dot.nextLexicalUse(t1, t2);
+        dot.assignedFrom(t2, call);
+        dot.endMethod("m", root);
+        dot.end();
+
+        // what the visitor wrote with String.format
+        String formatted = String.format("digraph %s {\n", (Object) null)
+                + String.format("\tC [label=\"class %s\"]\n", (Object) null)
+                + String.format("\n\t// ------ begin method %s\n\n", "m")
+                + String.format("\tM%d [label=\"M:%s\"];\n", 1, "m")
+                + String.format("\tC -> M%d\n", 1)
+                + String.format("\tM%d -> NT%d\n", 1, 1)
+                + String.format("\tNT%d [label=\"NT:%s\"];\n", 1, "MethodDeclaration")
+                + String.format("\tNT%d [label=\"NT:%s\"];\n", 2, null)
+                + String.format("\tT%d [label=\"T:%s\",shape=box, color=blue];\n", 3, "x")
+                + String.format("\tT%d [label=\"T:%s\",shape=box, color=blue];\n", 4, null)
+                + String.format("\tS%d [label=\"S:%s\",shape=box,color=grey];\n", 5, "x")
+                + String.format("\tV%d [label=\"V:%s\",color=green];\n", 6, "x")
+                + String.format("\tT%d -> T%d [color=blue, label=\"next token\"];\n", 3, 4)
+                + String.format("\tNT%d -> NT%d [color=red, label=\"child\"];\n", 1, 2)
+                + String.format("\tNT%d -> T%d [color=red, label=\"child\"];\n", 2, 3)
+                + String.format("\tT%d -> S%d [color=black, label=\"occurence of\"];\n", 3, 5)
+                + String.format("\tV%d -> T%d [color=green, label=\"subtoken of\"];\n", 6, 3)
+                + String.format("\tT%d -> NT%d [color=black, style=dotted, label=\"returns to\"];\n", 4, 2)
+                + String.format("\tT%d -> T%d [color=orange, label=\"next lexical use\",style=dashed];\n", 3, 4)
+                + String.format("\tT%d -> NT%d [color=brown, label=\"assigned from\",style=dotted];\n", 4, 2)
+                + String.format("\t// ------ end method %s\n\n", "m")
+                + "}";
+
+        assertThat(out.toString()).isEqualTo(formatted);
+    }
+
+    @Test
+    void truncation_keeps_no_edge_to_a_dropped_node() {
+        NonTerminal root = new NonTerminal("MethodDeclaration");
+        root.setId(1);
+        Token a = new Token("a");
+        a.setId(10);
+        Token b = new Token("b");
+        b.setId(11);
+        Token c = new Token("c");
+        c.setId(12);
+
+        // tokens come before the non-terminals, so the root is dropped
+        StringWriter out = new StringWriter();
+        DotVisitor dot = new DotVisitor(out, DotOptions.defaults().maxNodesPerMethod(2));
+        dot.className("A");
+        dot.method("m", root);
+        dot.token(a);
+        dot.token(b);
+        dot.token(c);
+        dot.nonTerminal(root);
+        dot.nextToken(a, b);
+        dot.nextToken(b, c);
+        dot.child(root, a);
+        dot.endMethod("m", root);
+        dot.end();
+
+        assertThat(nodes(out.toString())).containsExactly("C", "M1", "T10", "T11", "TRUNC1");
+        assertThat(edges(out.toString())).containsExactly("C -> M1", "T10 -> T11", "M1 -> TRUNC1");
+    }
+
+    @Test
+    void the_class_node_stays_out_of_the_clusters() {
+        NonTerminal root = new NonTerminal("MethodDeclaration");
+        root.setId(1);
+
+        StringWriter out = new StringWriter();
+        DotVisitor dot = new DotVisitor(out, DotOptions.defaults().clusterPerMethod());
+        dot.className("A");
+        dot.method("m", root);
+        dot.nonTerminal(root);
+        dot.endMethod("m", root);
+        dot.end();
+
+        String cluster = out.toString().substring(out.toString().indexOf("subgraph cluster_1 {"), out.toString().indexOf("\t}\n"));
+        assertThat(cluster).doesNotContain("C -> ");
+        assertThat(edges(out.toString())).containsExactly("M1 -> NT1", "C -> M1");
+    }
+
+    // the nodes the output declares, in order
+    static Set<String> nodes(String dot) {
+        Set<String> nodes = new LinkedHashSet<>();
+        Matcher node = NODE.matcher(dot);
+        while (node.find())
+            nodes.add(node.group(1));
+        return nodes;
+    }
+
+    static Set<String> edges(String dot) {
+        Set<String> edges = new LinkedHashSet<>();
+        Matcher edge = EDGE.matcher(dot);
+        while (edge.find())
+            edges.add(edge.group(1) + " -> " + edge.group(2));
+        return edges;
+    }
+}
@@ -0,0 +1,51 @@
+package com.github.sergdelft.j2graph.walker.graphdb;
+
+import com.github.sergdelft.j2graph.TestBase;
+import com.github.sergdelft.j2graph.graph.ClassGraph;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests the CSV escaping and that
+ * node ids are unique across methods and classes
+ */
+public class CsvGraphWriterTest extends TestBase {
+
+    private final ClassGraph graph = run("representation/Loop.java");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void escaping() {
+        assertThat(CsvGraphWriter.escape("i")).isEqualTo("i");
+        assertThat(CsvGraphWriter.escape(",")).isEqualTo("\",\"");
+        assertThat(CsvGraphWriter.escape("\"a\"")).isEqualTo("\"\"\"a\"\"\"");
+    }
+
+    @Test
+    void node_ids_are_global() throws IOException {
+        try (CsvGraphWriter writer = new CsvGraphWriter(directory)) {
+            out.accept(graph, writer);
+            out.accept(graph, writer);
+        }
+
+        List<String> nodes = Files.readAllLines(directory.resolve("nodes.csv"), StandardCharsets.UTF_8);
+        List<String> edges = Files.readAllLines(directory.resolve("edges.csv"), StandardCharsets.UTF_8);
+        long nodeCount = nodes.size() - 1;
+
+        assertThat(nodes.get(0)).isEqualTo("id,kind,label,class_name,method_name");
+        assertThat(nodes.get(nodes.size() - 1)).startsWith((nodeCount - 1) + ",");
+        assertThat(edges.get(0)).isEqualTo("source,target,type");
+        assertThat(edges.stream().skip(1).allMatch(edge -> Long.parseLong(edge.split(",")[0]) < nodeCount)).isTrue();
+        assertThat(edges.stream().anyMatch(edge -> edge.endsWith(",next lexical use"))).isTrue();
+    }
+}
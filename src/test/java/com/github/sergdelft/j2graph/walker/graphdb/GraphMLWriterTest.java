@@ -0,0 +1,38 @@
+package com.github.sergdelft.j2graph.walker.graphdb;
+
+import com.github.sergdelft.j2graph.TestBase;
+import com.github.sergdelft.j2graph.graph.ClassGraph;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests the GraphML document and the escaping of labels
+ */
+public class GraphMLWriterTest extends TestBase {
+
+    private final ClassGraph graph = run("representation/Loop.java");
+
+    @Test
+    void escaping() {
+        assertThat(GraphMLWriter.escape("i")).isEqualTo("i");
+        assertThat(GraphMLWriter.escape("i < 10 && j")).isEqualTo("i &lt; 10 &amp;&amp; j");
+    }
+
+    @Test
+    void document() throws IOException {
+        StringWriter document = new StringWriter();
+        try (GraphMLWriter writer = new GraphMLWriter(document)) {
+            out.accept(graph, writer);
+        }
+
+        assertThat(document.toString())
+                .contains("<graph id=\"G\" edgedefault=\"directed\">")
+                .contains("<node id=\"n0\">")
+                .contains("<data key=\"type\">child</data>")
+                .endsWith("</graphml>\n");
+    }
+}
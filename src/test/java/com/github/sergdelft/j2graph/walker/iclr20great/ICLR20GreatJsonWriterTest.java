@@ -0,0 +1,182 @@
+package com.github.sergdelft.j2graph.walker.iclr20great;
+
+import com.github.sergdelft.j2graph.TestBase;
+import com.github.sergdelft.j2graph.graph.ClassGraph;
+import com.github.sergdelft.j2graph.vocabulary.HashedLabelIds;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests that the streaming writer produces the
+ * same samples as the Gson-based visitor
+ */
+public class ICLR20GreatJsonWriterTest extends TestBase {
+
+    private final ClassGraph graph = run("representation/Loop.java");
+
+    @Test
+    void same_samples_as_the_visitor() {
+        ICLR20GreatVisitor visitor = new ICLR20GreatVisitor();
+        out.accept(graph, visitor);
+        List<String> expected = new ArrayList<>();
+        visitor.getCorrectAndBuggyPairs().forEach(pair -> {
+            expected.add(pair.getLeft().toString());
+            expected.add(pair.getRight().toString());
+        });
+
+        StringWriter writer = new StringWriter();
+        out.accept(graph, new ICLR20GreatJsonWriter(writer, () -> true));
+
+        assertThat(expected).hasSize(4);
+        assertThat(Arrays.asList(writer.toString().split("\n"))).isEqualTo(expected);
+    }
+
+    @Test
+    void buggy_samples_only_when_asked() {
+        StringWriter writer = new StringWriter();
+        ICLR20GreatJsonWriter dataWriter = new ICLR20GreatJsonWriter(writer, () -> false);
+        out.accept(graph, dataWriter);
+
+        assertThat(dataWriter.getSamplesInClass()).isEqualTo(2);
+        assertThat(writer.toString().split("\n")).hasSize(2);
+        assertThat(writer.toString()).doesNotContain("\"has_bug\":\"true\"");
+    }
+
+    @Test
+    void every_bug_kind_patches_one_token_of_the_correct_sample() {
+        StringWriter writer = new StringWriter();
+        ICLR20GreatJsonWriter dataWriter = new ICLR20GreatJsonWriter(writer, () -> true);
+        dataWriter.setBugKinds(EnumSet.allOf(BugKind.class));
+        out.accept(graph, dataWriter);
+
+        // both loops have a comparison, variables, and integer literals, but no ==, !=, && or ||
+        String[] lines = writer.toString().split("\n");
+        assertThat(lines).hasSize(8);
+
+        JsonObject correct = null;
+        Set<String> kinds = new TreeSet<>();
+        for (String line : lines) {
+            JsonObject sample = JsonParser.parseString(line).getAsJsonObject();
+            if (sample.get("has_bug").getAsString().equals("false")) {
+                correct = sample;
+                continue;
+            }
+
+            kinds.add(sample.get("bug_kind_name").getAsString());
+            int location = sample.get("error_location").getAsInt();
+            JsonArray correctTokens = correct.getAsJsonArray("source_tokens");
+            JsonArray buggyTokens = sample.getAsJsonArray("source_tokens");
+            for (int i = 0; i < correctTokens.size(); i++)
+                assertThat(correctTokens.get(i).equals(buggyTokens.get(i))).isEqualTo(i != location);
+            assertThat(sample.get("edges")).isEqualTo(correct.get("edges"));
+
+            for (JsonElement target : sample.getAsJsonArray("repair_targets")) {
+                if (sample.get("bug_kind_name").getAsString().equals("VARIABLE_MISUSE"))
+                    assertThat(correctTokens.get(target.getAsInt())).isEqualTo(correctTokens.get(location));
+            }
+        }
+        assertThat(kinds).containsExactly("LITERAL_OFF_BY_ONE", "OFF_BY_ONE", "VARIABLE_MISUSE");
+    }
+
+    @Test
+    void seeded_samples_only_depend_on_their_file() {
+        Path file = Paths.get("src/Loop.java");
+
+        StringWriter alone = new StringWriter();
+        ICLR20GreatJsonWriter first = new ICLR20GreatJsonWriter(alone, 7, random -> random.nextBoolean());
+        first.beginFile(file);
+        out.accept(graph, first);
+
+        StringWriter afterOthers = new StringWriter();
+        ICLR20GreatJsonWriter second = new ICLR20GreatJsonWriter(afterOthers, 7, random -> random.nextBoolean());
+        for (int i = 0; i < 5; i++) {
+            second.beginFile(Paths.get("src/Other" + i + ".java"));
+            out.accept(graph, second);
+        }
+        int before = afterOthers.getBuffer().length();
+        second.beginFile(file);
+        out.accept(graph, second);
+
+        assertThat(afterOthers.toString().substring(before)).isEqualTo(alone.toString());
+    }
+
+    @Test
+    void dictionary_encoded_samples_decode_to_the_same_samples() {
+        StringWriter inline = new StringWriter();
+        out.accept(graph, new ICLR20GreatJsonWriter(inline, () -> false));
+
+        StringWriter encoded = new StringWriter();
+        StringWriter strings = new StringWriter();
+        out.accept(graph, new ICLR20GreatJsonWriter(encoded, strings, () -> false));
+
+        List<String> table = new ArrayList<>();
+        for (String line : strings.toString().split("\n"))
+            table.add(JsonParser.parseString(line).getAsString());
+
+        String[] expected = inline.toString().split("\n");
+        String[] actual = encoded.toString().split("\n");
+        assertThat(actual).hasSize(expected.length);
+        assertThat(table).doesNotHaveDuplicates();
+        for (int i = 0; i < expected.length; i++)
+            assertThat(decode(actual[i], table)).isEqualTo(JsonParser.parseString(expected[i]));
+    }
+
+    @Test
+    void hashed_label_ids_replace_the_source_tokens() {
+        StringWriter inline = new StringWriter();
+        ICLR20GreatJsonWriter inlineWriter = new ICLR20GreatJsonWriter(inline, 1, random -> true);
+        inlineWriter.setBugKinds(EnumSet.allOf(BugKind.class));
+        out.accept(graph, inlineWriter);
+
+        HashedLabelIds labelIds = new HashedLabelIds(1 << 16, 3);
+        StringWriter hashed = new StringWriter();
+        ICLR20GreatJsonWriter hashedWriter = new ICLR20GreatJsonWriter(hashed, 1, random -> true);
+        hashedWriter.setBugKinds(EnumSet.allOf(BugKind.class));
+        hashedWriter.setLabelIds(labelIds);
+        out.accept(graph, hashedWriter);
+
+        String[] expected = inline.toString().split("\n");
+        String[] actual = hashed.toString().split("\n");
+        assertThat(actual).hasSize(expected.length);
+        for (int i = 0; i < expected.length; i++) {
+            JsonObject sample = JsonParser.parseString(expected[i]).getAsJsonObject();
+            JsonArray ids = new JsonArray();
+            for (JsonElement token : sample.getAsJsonArray("source_tokens"))
+                ids.add(labelIds.applyAsInt(token.getAsString()));
+            sample.add("source_tokens", ids);
+
+            assertThat(JsonParser.parseString(actual[i])).isEqualTo(sample);
+        }
+    }
+
+    private JsonObject decode(String line, List<String> table) {
+        JsonObject sample = JsonParser.parseString(line).getAsJsonObject();
+
+        JsonArray tokens = new JsonArray();
+        for (JsonElement id : sample.getAsJsonArray("source_tokens"))
+            tokens.add(table.get(id.getAsInt()));
+        sample.add("source_tokens", tokens);
+
+        for (JsonElement edge : sample.getAsJsonArray("edges")) {
+            JsonArray array = edge.getAsJsonArray();
+            assertThat(array.size()).isEqualTo(3);
+            array.add(ICLR20GreatVisitor.EdgeType.values()[array.get(2).getAsInt()].toString());
+        }
+        return sample;
+    }
+}
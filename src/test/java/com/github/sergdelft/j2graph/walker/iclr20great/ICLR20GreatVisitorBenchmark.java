@@ -0,0 +1,65 @@
+package com.github.sergdelft.j2graph.walker.iclr20great;
+
+import com.github.sergdelft.j2graph.builder.ClassGraphBuilder;
+import com.github.sergdelft.j2graph.builder.MethodGraphBuilder;
+import com.github.sergdelft.j2graph.builder.NonTerminalBuilder;
+import com.github.sergdelft.j2graph.graph.ClassGraph;
+import com.github.sergdelft.j2graph.graph.Token;
+import com.github.sergdelft.j2graph.walker.GraphWalker;
+
+import java.util.HashMap;
+
+/**
+ * Times {@link ICLR20GreatVisitor} on single methods of 8k to 64k nodes, where
+ * the edge callbacks dominate. Not a test: run it with its main method.
+ * <p>
+ * The data generator does not use this visitor, but {@link ICLR20GreatJsonWriter}.
+ */
+public class ICLR20GreatVisitorBenchmark {
+
+    private static final int[] STATEMENTS = {1_000, 2_000, 4_000, 8_000};
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        for (int statements : STATEMENTS) {
+            ClassGraph graph = largeMethod(statements);
+            ICLR20GreatVisitor visitor = new ICLR20GreatVisitor();
+            new GraphWalker().accept(graph, visitor);
+            int nodes = visitor.getCorrectAndBuggyPairs().get(0).getLeft().getAsJsonArray("source_tokens").size();
+
+            for (int round = 0; round < WARMUP_ROUNDS; round++)
+                new GraphWalker().accept(graph, new ICLR20GreatVisitor());
+
+            long start = System.nanoTime();
+            for (int round = 0; round < ROUNDS; round++)
+                new GraphWalker().accept(graph, new ICLR20GreatVisitor());
+            long millis = (System.nanoTime() - start) / 1_000_000 / ROUNDS;
+
+            System.out.printf("%,7d nodes: %,6d ms per method%n", nodes, millis);
+        }
+    }
+
+    // one method with a sequence of assignments like 'v3 = someValue3 < 3'
+    private static ClassGraph largeMethod(int statements) {
+        ClassGraphBuilder classGraph = new ClassGraphBuilder("Large", new HashMap<>());
+        MethodGraphBuilder method = new MethodGraphBuilder(classGraph, "large/0");
+        classGraph.addMethod(method);
+
+        NonTerminalBuilder root = method.root("MethodDeclaration");
+        root.token("void");
+        root.symbol("large");
+        for (int i = 0; i < statements; i++) {
+            NonTerminalBuilder assignment = root.nonTerminal("ExpressionStatement").nonTerminal("Assignment");
+            Token variable = assignment.symbol("v" + (i % 50)).getRight();
+            assignment.token("=");
+
+            NonTerminalBuilder expression = assignment.nonTerminal("InfixExpression");
+            expression.symbol("someValue" + (i % 7));
+            expression.token(i % 2 == 0 ? "<" : "==");
+            expression.token(Integer.toString(i));
+            variable.assignedFrom(expression.getNode());
+        }
+        return classGraph.build();
+    }
+}
@@ -0,0 +1,53 @@
+package com.github.sergdelft.j2graph.walker.numpy;
+
+import com.github.sergdelft.j2graph.TestBase;
+import com.github.sergdelft.j2graph.graph.ClassGraph;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests the npy headers and
+ * the sharding of the graphs
+ */
+public class NpyGraphWriterTest extends TestBase {
+
+    private final ClassGraph graph = run("representation/Loop.java");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void header_is_aligned_and_describes_the_array() {
+        byte[] header = NpyFormat.header("<i4", 2, 10);
+
+        assertThat(header.length % 64).isEqualTo(0);
+        assertThat(header[header.length - 1]).isEqualTo((byte) '\n');
+        assertThat(new String(header, 10, header.length - 10, StandardCharsets.US_ASCII).trim())
+                .isEqualTo("{'descr': '<i4', 'fortran_order': False, 'shape': (2, 10), }");
+        assertThat(new String(NpyFormat.header("|i1", 3), StandardCharsets.US_ASCII)).contains("'shape': (3,)");
+    }
+
+    @Test
+    void one_directory_of_arrays_per_shard() throws IOException {
+        try (NpyGraphWriter writer = new NpyGraphWriter(directory, "loop", 1, String::length)) {
+            out.accept(graph, writer);
+            assertThat(writer.getShardCount()).isEqualTo(2);
+        }
+
+        try (Stream<Path> arrays = Files.list(directory.resolve("loop-00000"))) {
+            assertThat(arrays.map(array -> array.getFileName().toString())).containsExactlyInAnyOrder(
+                    "edge_index.npy", "edge_type.npy", "node_label.npy", "node_kind.npy", "node_offsets.npy", "edge_offsets.npy");
+        }
+        byte[] offsets = Files.readAllBytes(directory.resolve("loop-00000").resolve("node_offsets.npy"));
+        assertThat(offsets.length).isEqualTo(NpyFormat.header("<i8", 2).length + 2 * 8);
+        assertThat(Files.exists(directory.resolve("loop-00002"))).isFalse();
+    }
+}
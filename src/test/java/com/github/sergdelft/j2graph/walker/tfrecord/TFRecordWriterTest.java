@@ -0,0 +1,62 @@
+package com.github.sergdelft.j2graph.walker.tfrecord;
+
+import com.github.sergdelft.j2graph.TestBase;
+import com.github.sergdelft.j2graph.graph.ClassGraph;
+import com.github.sergdelft.j2graph.output.ShardedOutput;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32C;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests the TFRecord framing and
+ * the rolling of the shards
+ */
+public class TFRecordWriterTest extends TestBase {
+
+    private final ClassGraph graph = run("representation/Loop.java");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void one_record_per_method_in_rolling_shards() throws IOException {
+        try (TFRecordWriter writer = new TFRecordWriter(new ShardedOutput(directory, "loop", ".tfrecord", 1, Long.MAX_VALUE))) {
+            out.accept(graph, writer);
+        }
+
+        assertThat(records(directory.resolve("loop-00000.tfrecord"))).isEqualTo(1);
+        assertThat(records(directory.resolve("loop-00001.tfrecord"))).isEqualTo(1);
+        assertThat(Files.exists(directory.resolve("loop-00002.tfrecord"))).isFalse();
+    }
+
+    // counts the records, checking the length and payload checksums along the way
+    private int records(Path file) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+        int records = 0;
+        while (data.hasRemaining()) {
+            int start = data.position();
+            int length = (int) data.getLong();
+            assertThat(data.getInt()).isEqualTo(maskedCrc(data.array(), start, 8));
+            assertThat(data.getInt(start + 12 + length)).isEqualTo(maskedCrc(data.array(), start + 12, length));
+
+            data.position(start + 16 + length);
+            records++;
+        }
+        return records;
+    }
+
+    private int maskedCrc(byte[] bytes, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes, offset, length);
+        int value = (int) crc.getValue();
+        return ((value >>> 15) | (value << 17)) + 0xa282ead8;
+    }
+}